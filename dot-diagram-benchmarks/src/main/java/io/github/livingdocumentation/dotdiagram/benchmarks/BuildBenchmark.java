@@ -0,0 +1,74 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.benchmarks.GraphShape.Order;
+
+/**
+ * Throughput of building graphs: addNode and addAssociation alone on a flat
+ * graph, then whole graphs of various shapes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int nodes;
+
+	@Param({ "0", "3" })
+	public int depth;
+
+	@Param({ "ASCENDING", "SHUFFLED" })
+	public Order order;
+
+	private GraphShape shape;
+
+	@Setup
+	public void setUp() {
+		shape = new GraphShape(nodes, depth, 4, 2, order);
+	}
+
+	@Benchmark
+	public DotGraph addNode() {
+		final DotGraph graph = new DotGraph("addNode");
+		final Digraph digraph = graph.getDigraph();
+		for (int i = 0; i < nodes; i++) {
+			digraph.addNodeById(shape.key(i));
+		}
+		return graph;
+	}
+
+	@Benchmark
+	public DotGraph addAssociation() {
+		final DotGraph graph = new DotGraph("addAssociation");
+		final Digraph digraph = graph.getDigraph();
+		for (int i = 0; i < nodes; i++) {
+			final long key = shape.key(i);
+			digraph.addAssociationById(key, (key + 1) % nodes);
+		}
+		return graph;
+	}
+
+	@Benchmark
+	public DotGraph build() {
+		return shape.build();
+	}
+}
@@ -0,0 +1,82 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+/**
+ * Scaling of the concurrent construction of a graph with the number of
+ * threads, one module per task, optionally reading the id of every node added
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentBuildBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "200" })
+	public int modules;
+
+	@Param({ "250" })
+	public int classesPerModule;
+
+	@Param({ "false", "true" })
+	public boolean readIds;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setUp() {
+		pool = new ForkJoinPool(threads);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public DotGraph build() throws Exception {
+		final DotGraph graph = DotGraph.concurrent("concurrent build");
+		final Digraph digraph = graph.getDigraph();
+		final int nodes = modules * classesPerModule;
+		pool.submit(() -> IntStream.range(0, modules).parallel().forEach(module -> {
+			final Cluster cluster = digraph.addCluster("module-" + module);
+			cluster.setLabel("Module " + module);
+			for (int i = 0; i < classesPerModule; i++) {
+				final long key = (long) module * classesPerModule + i;
+				cluster.addNodeById(key).setLabel("Class" + key);
+				if (readIds) {
+					cluster.addNodeById(key).getId();
+				}
+				if (i > 0) {
+					cluster.addAssociationById(key, key - 1).setLabel("calls");
+				}
+				digraph.addAssociationById(key, (key * 31) % nodes);
+			}
+		})).get();
+		return graph;
+	}
+}
@@ -0,0 +1,88 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.livingdocumentation.dotdiagram.DotRenderer;
+import io.github.livingdocumentation.dotdiagram.DotStyles;
+import io.github.livingdocumentation.dotdiagram.LabelFormatter;
+
+/**
+ * The DotRenderer helpers called for every node and edge, and the label
+ * formatting with and without its cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DotRendererBenchmark {
+
+	@Param({ "12", "60", "240" })
+	public int labelLength;
+
+	private String label;
+
+	private List<String> cells;
+
+	private List<String> stereotypes;
+
+	private final LabelFormatter cached = new LabelFormatter(LabelFormatter.DEFAULT_CACHE_SIZE);
+
+	private final LabelFormatter uncached = new LabelFormatter(0);
+
+	@Setup
+	public void setUp() {
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < labelLength) {
+			sb.append(sb.length() % 3 == 0 ? "Order" : "Line ").append("Item ");
+		}
+		label = sb.substring(0, labelLength);
+		cells = Arrays.asList(label, "<<entity>>", "<<aggregate root>>");
+		stereotypes = cells.subList(1, cells.size());
+	}
+
+	@Benchmark
+	public String wrapText() {
+		return DotRenderer.wrapText(label, 20);
+	}
+
+	@Benchmark
+	public String toLines() {
+		return DotRenderer.toLines(cells);
+	}
+
+	@Benchmark
+	public String formatLabel() {
+		return uncached.format(label, stereotypes, 20);
+	}
+
+	@Benchmark
+	public String formatLabelCached() {
+		return cached.format(label, stereotypes, 20);
+	}
+
+	@Benchmark
+	public String edge() {
+		return DotRenderer.edge("c1234", "c5678", "a comment", "label=\"uses\"", DotStyles.ASSOCIATION_EDGE_STYLE);
+	}
+
+	@Benchmark
+	public String node() {
+		return DotRenderer.node("c1234", DotRenderer.wrapText(label, 20), DotStyles.STUB_NODE_OPTIONS);
+	}
+}
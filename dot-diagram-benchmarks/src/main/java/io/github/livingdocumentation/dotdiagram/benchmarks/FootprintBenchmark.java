@@ -0,0 +1,77 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+/**
+ * The heap retained per node of a typical graph of leaf nodes, of objects or
+ * columnar, reported as the bytesPerNode counter; the figure is approximate,
+ * being based on the used heap after garbage collection, hence a fork of its
+ * own
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 1)
+@Fork(1)
+public class FootprintBenchmark {
+
+	@Param({ "200000" })
+	public int nodes;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+
+		public long bytesPerNode;
+	}
+
+	@Benchmark
+	public DotGraph leafNodes(Footprint footprint) {
+		return leafNodes(footprint, false);
+	}
+
+	@Benchmark
+	public DotGraph columnarLeafNodes(Footprint footprint) {
+		return leafNodes(footprint, true);
+	}
+
+	private DotGraph leafNodes(Footprint footprint, boolean columnar) {
+		final long before = usedHeap();
+		final DotGraph graph = columnar ? DotGraph.columnar("footprint") : new DotGraph("footprint");
+		final Digraph digraph = graph.getDigraph();
+		Cluster cluster = null;
+		for (int i = 0; i < nodes; i++) {
+			if (i % 1000 == 0) {
+				cluster = digraph.addCluster("module" + i / 1000);
+			}
+			cluster.addNodeById(i).setLabel("Class");
+		}
+		footprint.bytesPerNode = (usedHeap() - before) / nodes;
+		return graph;
+	}
+
+	static long usedHeap() {
+		final Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import static io.github.livingdocumentation.dotdiagram.DotStyles.ASSOCIATION_EDGE_STYLE;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+/**
+ * Builds graphs of a given shape: a number of leaf nodes spread evenly into
+ * nested clusters, each node having a label, a stereotype and a given number of
+ * associations to other nodes, the nodes being added in ascending, descending
+ * or shuffled order of their keys
+ */
+public final class GraphShape {
+
+	public enum Order {
+		ASCENDING, DESCENDING, SHUFFLED
+	}
+
+	private final int nodes;
+
+	private final int depth;
+
+	private final int fanout;
+
+	private final int associationsPerNode;
+
+	private final Order order;
+
+	/**
+	 * @param depth
+	 *            The number of levels of clusters above the leaf nodes, 0 for
+	 *            a flat graph
+	 * @param fanout
+	 *            The number of sub-clusters of each cluster
+	 */
+	public GraphShape(int nodes, int depth, int fanout, int associationsPerNode, Order order) {
+		this.nodes = nodes;
+		this.depth = depth;
+		this.fanout = fanout;
+		this.associationsPerNode = associationsPerNode;
+		this.order = order;
+	}
+
+	public DotGraph build() {
+		final DotGraph graph = new DotGraph("benchmark " + this, "LR");
+		final Digraph digraph = graph.getDigraph();
+		final int leafClusters = leafClusters();
+		for (int i = 0; i < nodes; i++) {
+			final long key = key(i);
+			final AbstractNode parent = cluster(digraph, (int) (key % leafClusters));
+			parent.addNodeById(key).setLabel("A rather long class name number " + key).addStereotype("entity");
+		}
+		for (int i = 0; i < nodes; i++) {
+			final long key = key(i);
+			for (int a = 1; a <= associationsPerNode; a++) {
+				digraph.addAssociationById(key, (key * 31 + a) % nodes).setLabel("uses").setOptions(
+						ASSOCIATION_EDGE_STYLE);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * @return The key of the i-th node added
+	 */
+	public long key(int i) {
+		switch (order) {
+		case DESCENDING:
+			return nodes - 1 - i;
+		case SHUFFLED:
+			// a multiplicative permutation of [0, nodes) for a prime step
+			// coprime with the count of nodes
+			return (i * 1000003L) % nodes;
+		default:
+			return i;
+		}
+	}
+
+	private int leafClusters() {
+		int count = 1;
+		for (int level = 0; level < depth; level++) {
+			count *= fanout;
+		}
+		return count;
+	}
+
+	private AbstractNode cluster(Digraph digraph, int leaf) {
+		AbstractNode parent = digraph;
+		String path = "";
+		int divisor = leafClusters();
+		for (int level = 0; level < depth; level++) {
+			divisor /= fanout;
+			path += "." + (leaf / divisor) % fanout;
+			parent = parent.addCluster("Module" + path);
+			parent.setLabel("Module " + path);
+		}
+		return parent;
+	}
+
+	public String toString() {
+		return "GraphShape nodes=" + nodes + " depth=" + depth + " fanout=" + fanout + " associations="
+				+ associationsPerNode + " order=" + order;
+	}
+}
@@ -0,0 +1,103 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.RenderOptions;
+import io.github.livingdocumentation.dotdiagram.benchmarks.GraphShape.Order;
+
+/**
+ * Rendering graphs of various sizes and cluster depths, into a String or
+ * streamed into a Writer; the insertion order of the nodes exercises the
+ * sorting of the nodes by key
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int nodes;
+
+	@Param({ "0", "1", "3" })
+	public int depth;
+
+	@Param({ "ASCENDING", "DESCENDING", "SHUFFLED" })
+	public Order order;
+
+	private DotGraph graph;
+
+	@Setup
+	public void setUp() {
+		graph = new GraphShape(nodes, depth, 4, 2, order).build();
+	}
+
+	@Benchmark
+	public String render() {
+		return graph.render();
+	}
+
+	@Benchmark
+	public void renderStreaming(Blackhole blackhole) throws IOException {
+		graph.renderTo(new BlackholeWriter(blackhole));
+	}
+
+	@Benchmark
+	public String renderParallel() {
+		return graph.render(RenderOptions.parallel().withParallelThreshold(256));
+	}
+
+	/**
+	 * A Writer consuming everything, to measure the rendering alone
+	 */
+	static final class BlackholeWriter extends Writer {
+
+		private final Blackhole blackhole;
+
+		BlackholeWriter(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) {
+			blackhole.consume(buffer);
+		}
+
+		@Override
+		public void write(String s, int offset, int length) {
+			blackhole.consume(s);
+		}
+
+		@Override
+		public Writer append(CharSequence s) {
+			blackhole.consume(s);
+			return this;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
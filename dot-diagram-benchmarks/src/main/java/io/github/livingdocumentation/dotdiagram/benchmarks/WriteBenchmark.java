@@ -0,0 +1,75 @@
+package io.github.livingdocumentation.dotdiagram.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph;
+import io.github.livingdocumentation.dotdiagram.GraphvizDotWriter;
+import io.github.livingdocumentation.dotdiagram.benchmarks.GraphShape.Order;
+
+/**
+ * Writing the .dot file of a graph with AbstractDotWriter, from the rendered
+ * String or streamed from the graph, in a temporary directory; Graphviz itself
+ * is not run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int nodes;
+
+	private DotGraph graph;
+
+	private String content;
+
+	private File directory;
+
+	private GraphvizDotWriter writer;
+
+	@Setup
+	public void setUp() throws IOException {
+		graph = new GraphShape(nodes, 1, 8, 2, Order.ASCENDING).build();
+		content = graph.render();
+		directory = File.createTempFile("dot-diagram-benchmark", "");
+		directory.delete();
+		directory.mkdir();
+		writer = new GraphvizDotWriter(directory.getPath() + File.separator, "", ".png", "");
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public void writeString() throws IOException {
+		writer.write("string", content);
+	}
+
+	@Benchmark
+	public void writeStreaming() throws IOException {
+		writer.write("streaming", graph);
+	}
+}
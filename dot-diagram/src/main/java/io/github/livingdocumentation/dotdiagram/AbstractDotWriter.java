@@ -1,9 +1,33 @@
 package io.github.livingdocumentation.dotdiagram;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AbstractDotWriter implements DotWriter {
 
+    private static final String OUTPUT_ENCODING = "ISO-8859-1";
+
+    /**
+     * The default maximum sum of the weights of the diagrams rendered at a
+     * time, in chars of dot text: about 16k nodes and associations, as the
+     * memory of a Graphviz process grows with the size of its dot text
+     */
+    public static final long DEFAULT_MAX_WEIGHT = 1 << 20;
+
+    private volatile DotMetricsListener metricsListener = DotMetricsListener.NONE;
+
     public abstract String getPath();
     public abstract String getImageExtension();
 
@@ -15,16 +39,120 @@ public abstract class AbstractDotWriter implements DotWriter {
      */
     @Override
     public void write(String filename, String content) throws UnsupportedEncodingException, FileNotFoundException {
-        final String outputFileName = getPath() + filename + ".dot";
-        final String outputEncoding = "ISO-8859-1";
-        final FileOutputStream fos = new FileOutputStream(outputFileName);
-        final PrintWriter w = new PrintWriter(new BufferedWriter(new OutputStreamWriter(fos, outputEncoding)));
+        final DotMetricsListener listener = metricsListener;
+        if (listener == DotMetricsListener.NONE) {
+            writeDotFile(filename, content);
+            return;
+        }
+        final long start = System.nanoTime();
+        writeDotFile(filename, content);
+        written(listener, filename, start);
+    }
 
+    private void writeDotFile(String filename, String content) throws UnsupportedEncodingException,
+            FileNotFoundException {
+        final PrintWriter w = openDotFile(filename);
         w.println(content);
         w.flush();
         w.close();
     }
 
+    /**
+     * Streams the given content (typically a DotGraph) directly to the file,
+     * without building the whole dot text in memory
+     *
+     * @param filename
+     *            The filename without the extension and its path
+     *
+     *            Writes as path + filename.dot
+     */
+    public void write(String filename, Renderable content) throws IOException {
+        final DotMetricsListener listener = metricsListener;
+        if (listener == DotMetricsListener.NONE) {
+            writeDotFile(filename, content);
+            return;
+        }
+        final long start = System.nanoTime();
+        writeDotFile(filename, content);
+        if (content instanceof DotGraph) {
+            final DotGraph graph = (DotGraph) content;
+            listener.graphRendered(graph.getDigraph().getId(), GraphStatistics.of(graph), System.nanoTime() - start);
+        }
+        written(listener, filename, start);
+    }
+
+    /**
+     * Renders the given content once, compact, and writes that same text to
+     * the dot file, for the writers sending the dot text to a remote service
+     *
+     * @return The compact dot text
+     */
+    protected String writeCompact(String filename, Renderable content) throws IOException {
+        final DotMetricsListener listener = metricsListener;
+        if (listener == DotMetricsListener.NONE) {
+            final String dot = DotRenderer.toString(out -> content.render(out, RenderOptions.compact()));
+            writeDotFile(filename, dot);
+            return dot;
+        }
+        final long start = System.nanoTime();
+        final String dot = DotRenderer.toString(out -> content.render(out, RenderOptions.compact()));
+        if (content instanceof DotGraph) {
+            final DotGraph graph = (DotGraph) content;
+            listener.graphRendered(graph.getDigraph().getId(), GraphStatistics.of(graph), System.nanoTime() - start);
+        }
+        writeDotFile(filename, dot);
+        written(listener, filename, start);
+        return dot;
+    }
+
+    private void writeDotFile(String filename, Renderable content) throws IOException {
+        final PrintWriter w = openDotFile(filename);
+        try {
+            content.render(w);
+            w.println();
+            w.flush();
+            if (w.checkError()) {
+                throw new IOException("Errors writing " + getPath() + filename + ".dot");
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    private void written(DotMetricsListener listener, String filename, long start) {
+        listener.dotWritten(filename, new File(getPath() + filename + ".dot").length(), System.nanoTime() - start);
+    }
+
+    /**
+     * @param metricsListener
+     *            The listener to the writing and the rendering of the
+     *            diagrams by this writer, NONE for none
+     */
+    public void setMetricsListener(DotMetricsListener metricsListener) {
+        if (metricsListener == null) {
+            throw new IllegalArgumentException("The metrics listener is required, NONE for none");
+        }
+        this.metricsListener = metricsListener;
+    }
+
+    public DotMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    private PrintWriter openDotFile(String filename) throws UnsupportedEncodingException, FileNotFoundException {
+        final String outputFileName = getPath() + filename + ".dot";
+        final FileOutputStream fos = new FileOutputStream(outputFileName);
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(fos, OUTPUT_ENCODING)));
+    }
+
+    /**
+     * @return What determines the image rendered from a dot file besides its
+     *         content, such as the command and the format, for caching
+     */
+    protected String getRenderingKey() {
+        return getClass().getName() + " " + getImageExtension();
+    }
+
     /**
      * All-in-on convenience method
      *
@@ -36,4 +164,90 @@ public abstract class AbstractDotWriter implements DotWriter {
         render(filename);
         return filename + getImageExtension();
     }
+
+    /**
+     * All-in-on convenience method, streaming the content to the dot file
+     *
+     * @return The filename of the dot-generated picture for the given content
+     */
+    public String toImage(String filename, Renderable content) throws InterruptedException, IOException {
+        write(filename, content);
+        render(filename);
+        return filename + getImageExtension();
+    }
+
+    /**
+     * Renders all the given diagrams, with as many Graphviz processes at a
+     * time as cores, within the DEFAULT_MAX_WEIGHT
+     *
+     * @see #renderAll(Collection, int, long)
+     */
+    public List<Future<String>> renderAll(Collection<DiagramJob> jobs) {
+        return renderAll(jobs, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Renders all the given diagrams on a bounded pool, the heaviest first to
+     * cut the total time; returns at once
+     *
+     * @param parallelism
+     *            The maximum number of diagrams rendered at a time
+     * @param maxWeight
+     *            The maximum sum of the weights of the diagrams rendered at a
+     *            time, in chars of dot text (see DiagramJob), so as not to
+     *            oversubscribe the memory of the Graphviz processes; a diagram
+     *            heavier than that is rendered alone, and the diagrams waiting
+     *            for their weight are served in order, so that lighter ones
+     *            cannot starve a heavy one
+     * @return The future image filename of each diagram, in the order of the
+     *         jobs, failed with the error of its rendering if any
+     */
+    public List<Future<String>> renderAll(Collection<DiagramJob> jobs, int parallelism, long maxWeight) {
+        if (parallelism < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Parallelism and max weight must be positive: " + parallelism + ", "
+                    + maxWeight);
+        }
+        final List<DiagramJob> ordered = new ArrayList<DiagramJob>(jobs);
+        final List<Future<String>> futures = new ArrayList<Future<String>>(ordered.size());
+        if (ordered.isEmpty()) {
+            return futures;
+        }
+        // the weights in units of the budget, so that it fits in a semaphore
+        final long unit = maxWeight / Integer.MAX_VALUE + 1;
+        final int budget = (int) (maxWeight / unit);
+        final Semaphore weights = new Semaphore(budget, true);
+
+        final Integer[] heaviestFirst = new Integer[ordered.size()];
+        for (int i = 0; i < heaviestFirst.length; i++) {
+            heaviestFirst[i] = i;
+        }
+        Arrays.sort(heaviestFirst,
+                (i1, i2) -> Long.compare(ordered.get(i2).getWeight(), ordered.get(i1).getWeight()));
+        final ExecutorService pool = newPool(Math.min(parallelism, ordered.size()));
+        futures.addAll(Collections.<Future<String>> nCopies(ordered.size(), null));
+        for (int index : heaviestFirst) {
+            final DiagramJob job = ordered.get(index);
+            final int permits = (int) Math.min(budget, (job.getWeight() + unit - 1) / unit);
+            futures.set(index, pool.submit((Callable<String>) () -> {
+                weights.acquire(permits);
+                try {
+                    return job.toImage(this);
+                } finally {
+                    weights.release(permits);
+                }
+            }));
+        }
+        pool.shutdown();
+        return futures;
+    }
+
+    private static ExecutorService newPool(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), r -> {
+                    final Thread thread = new Thread(r, "dot-render-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
 }
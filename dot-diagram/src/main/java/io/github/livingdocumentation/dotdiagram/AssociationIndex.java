@@ -0,0 +1,160 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
+
+/**
+ * Indexes all the associations of a graph by their source and by their target
+ * ordinal: each node has a compact array of the numbers of its outgoing
+ * associations and another one of its incoming associations, so that adding
+ * an association is O(1) however many parallel associations there are, and
+ * degrees are O(1) too. The associations of a same source and target are
+ * also chained from a hash of the pair, so that checking for a duplicate is
+ * O(1) and finding one by label only walks the associations of that pair.
+ */
+final class AssociationIndex {
+
+	private static final int[] NONE = new int[0];
+
+	private Association[] associations = new Association[16];
+
+	private int size = 0;
+
+	private int[][] outgoing = new int[16][];
+
+	private int[] outDegrees = new int[16];
+
+	private int[][] incoming = new int[16][];
+
+	private int[] inDegrees = new int[16];
+
+	// the first association of each pair, then the next and the last of the
+	// same pair by association number
+
+	private final LongIntHashMap firstByPair = new LongIntHashMap();
+
+	private int[] nextSamePair = new int[16];
+
+	private int[] lastSamePair = new int[16];
+
+	public int size() {
+		return size;
+	}
+
+	public void add(Association association) {
+		if (size == associations.length) {
+			associations = Arrays.copyOf(associations, size + (size >> 1));
+			nextSamePair = Arrays.copyOf(nextSamePair, associations.length);
+			lastSamePair = Arrays.copyOf(lastSamePair, associations.length);
+		}
+		final int number = size++;
+		associations[number] = association;
+		final int first = firstByPair.getOrPut(pair(association.source, association.target), number);
+		nextSamePair[number] = -1;
+		if (first == number) {
+			lastSamePair[number] = number;
+		} else {
+			nextSamePair[lastSamePair[first]] = number;
+			lastSamePair[first] = number;
+		}
+		outgoing = append(outgoing, outDegrees, association.source, number);
+		outDegrees = grow(outDegrees, outgoing.length);
+		outDegrees[association.source]++;
+		incoming = append(incoming, inDegrees, association.target, number);
+		inDegrees = grow(inDegrees, incoming.length);
+		inDegrees[association.target]++;
+	}
+
+	private static int[][] append(int[][] adjacency, int[] degrees, int ordinal, int number) {
+		if (ordinal >= adjacency.length) {
+			adjacency = Arrays.copyOf(adjacency, Math.max(ordinal + 1, adjacency.length + (adjacency.length >> 1)));
+		}
+		int[] numbers = adjacency[ordinal];
+		final int degree = ordinal < degrees.length ? degrees[ordinal] : 0;
+		if (numbers == null) {
+			numbers = new int[2];
+			adjacency[ordinal] = numbers;
+		} else if (degree == numbers.length) {
+			numbers = Arrays.copyOf(numbers, degree + (degree >> 1) + 1);
+			adjacency[ordinal] = numbers;
+		}
+		numbers[degree] = number;
+		return adjacency;
+	}
+
+	private static int[] grow(int[] degrees, int length) {
+		return degrees.length < length ? Arrays.copyOf(degrees, length) : degrees;
+	}
+
+	private static long pair(int source, int target) {
+		return ((long) source << 32) | (target & 0xFFFFFFFFL);
+	}
+
+	public int outDegree(int ordinal) {
+		return ordinal >= 0 && ordinal < outDegrees.length ? outDegrees[ordinal] : 0;
+	}
+
+	public int inDegree(int ordinal) {
+		return ordinal >= 0 && ordinal < inDegrees.length ? inDegrees[ordinal] : 0;
+	}
+
+	/**
+	 * @return The associations from the given node, in the order they were
+	 *         added
+	 */
+	public List<Association> from(int ordinal) {
+		return view(ordinal >= 0 && ordinal < outgoing.length ? outgoing[ordinal] : null, outDegree(ordinal));
+	}
+
+	/**
+	 * @return The associations to the given node, in the order they were added
+	 */
+	public List<Association> to(int ordinal) {
+		return view(ordinal >= 0 && ordinal < incoming.length ? incoming[ordinal] : null, inDegree(ordinal));
+	}
+
+	private List<Association> view(int[] numbers, final int degree) {
+		final int[] snapshot = numbers == null ? NONE : Arrays.copyOf(numbers, degree);
+		final Association[] all = associations;
+		return new AbstractList<Association>() {
+
+			public Association get(int index) {
+				return all[snapshot[index]];
+			}
+
+			public int size() {
+				return snapshot.length;
+			}
+		};
+	}
+
+	/**
+	 * @return The first association from the source to the target with the
+	 *         given label (possibly null), or null if none; only walks the
+	 *         associations of that pair
+	 */
+	public Association find(int source, int target, String label) {
+		for (int i = firstByPair.get(pair(source, target)); i != -1; i = nextSamePair[i]) {
+			final Association association = associations[i];
+			if (label == null ? association.label == null : label.equals(association.label)) {
+				return association;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if there is at least one association from the source to
+	 *         the target, whatever its label
+	 */
+	public boolean contains(int source, int target) {
+		return firstByPair.get(pair(source, target)) != -1;
+	}
+
+	public String toString() {
+		return "AssociationIndex: " + size + " associations";
+	}
+}
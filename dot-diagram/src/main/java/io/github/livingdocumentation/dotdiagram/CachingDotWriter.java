@@ -0,0 +1,185 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorates a writer with a cache of the images in a local directory, by hash
+ * of the dot content and of the rendering key of the writer (its command and
+ * format), so that Graphviz is only run on the diagrams that changed; the
+ * least recently used images are evicted beyond the given size.
+ * 
+ * The images are written to the cache atomically, so that several builds may
+ * share the same cache directory.
+ */
+public final class CachingDotWriter extends AbstractDotWriter {
+
+	private static final String TEMP_PREFIX = "tmp-";
+
+	private final AbstractDotWriter writer;
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param directory
+	 *            The cache directory, created if missing
+	 * @param maxBytes
+	 *            The maximum size of the cached images
+	 */
+	public CachingDotWriter(AbstractDotWriter writer, File directory, long maxBytes) throws IOException {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("The cache size must be positive: " + maxBytes);
+		}
+		this.writer = writer;
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory.toPath());
+		for (File image : images()) {
+			bytes.addAndGet(image.length());
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return writer.getPath();
+	}
+
+	@Override
+	public String getImageExtension() {
+		return writer.getImageExtension();
+	}
+
+	@Override
+	protected String getRenderingKey() {
+		return writer.getRenderingKey();
+	}
+
+	/**
+	 * Copies the cached image of the dot file if any, otherwise renders it
+	 * with the decorated writer and caches the image
+	 */
+	@Override
+	public void render(String filename) throws InterruptedException, IOException {
+		final Path dot = new File(getPath() + filename + ".dot").toPath();
+		final Path image = new File(getPath() + filename + getImageExtension()).toPath();
+		final File cached = new File(directory, hash(dot) + getImageExtension());
+		try {
+			Files.copy(cached.toPath(), image, StandardCopyOption.REPLACE_EXISTING);
+			// the modification time tracks the last use, for the eviction
+			cached.setLastModified(System.currentTimeMillis());
+			hits.incrementAndGet();
+			getMetricsListener().cacheLookup(filename, true);
+			return;
+		} catch (NoSuchFileException e) {
+			misses.incrementAndGet();
+			getMetricsListener().cacheLookup(filename, false);
+		}
+		writer.render(filename);
+		store(image, cached);
+	}
+
+	private void store(Path image, File cached) throws IOException {
+		final Path temp = Files.createTempFile(directory.toPath(), TEMP_PREFIX, getImageExtension());
+		try {
+			Files.copy(image, temp, StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(temp, cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		if (bytes.addAndGet(cached.length()) > maxBytes) {
+			evict();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used images until the cache fits in its
+	 * size again
+	 */
+	private synchronized void evict() {
+		final File[] images = images();
+		long total = 0;
+		for (File image : images) {
+			total += image.length();
+		}
+		Arrays.sort(images, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < images.length && total > maxBytes; i++) {
+			final long length = images[i].length();
+			if (images[i].delete()) {
+				total -= length;
+			}
+		}
+		bytes.set(total);
+	}
+
+	private File[] images() {
+		final File[] images = directory.listFiles((dir, name) -> !name.startsWith(TEMP_PREFIX)
+				&& name.endsWith(getImageExtension()));
+		return images == null ? new File[0] : images;
+	}
+
+	private String hash(Path dot) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new DotDiagramException("No SHA-256 to hash the dot content", e);
+		}
+		digest.update(getRenderingKey().getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		final byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(dot)) {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		final StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return The size of the cached images, as last known
+	 */
+	public long getCachedBytes() {
+		return bytes.get();
+	}
+
+	public String toString() {
+		return "CachingDotWriter directory=" + directory + " maxBytes=" + maxBytes + " writer=" + writer;
+	}
+}
@@ -0,0 +1,87 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.IOException;
+
+/**
+ * A diagram to render in a batch: its filename and dot content, with the
+ * weight of its rendering, as an estimate of the size of its dot text
+ */
+public final class DiagramJob {
+
+	// the estimated number of chars per node or association of a graph
+	private static final int CHARS_PER_ELEMENT = 64;
+
+	private final String filename;
+
+	private final String text;
+
+	private final Renderable content;
+
+	private final long weight;
+
+	private DiagramJob(String filename, String text, Renderable content, long weight) {
+		if (filename == null) {
+			throw new IllegalArgumentException("The filename is required");
+		}
+		this.filename = filename;
+		this.text = text;
+		this.content = content;
+		this.weight = Math.max(1, weight);
+	}
+
+	/**
+	 * @param filename
+	 *            The filename without the extension and its path
+	 */
+	public static DiagramJob of(String filename, String content) {
+		return of(filename, content, content.length());
+	}
+
+	public static DiagramJob of(String filename, String content, long weight) {
+		return new DiagramJob(filename, content, null, weight);
+	}
+
+	/**
+	 * The content is streamed to the dot file; the weight of a DotGraph is
+	 * estimated from its number of nodes and associations
+	 */
+	public static DiagramJob of(String filename, Renderable content) {
+		final long weight = content instanceof DotGraph ? CHARS_PER_ELEMENT
+				* (long) ((DotGraph) content).getDigraph().weight() : 1;
+		return of(filename, content, weight);
+	}
+
+	public static DiagramJob of(String filename, Renderable content, long weight) {
+		return new DiagramJob(filename, null, content, weight);
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Writes the dot file with the given writer
+	 */
+	void write(AbstractDotWriter writer) throws IOException {
+		if (text != null) {
+			writer.write(filename, text);
+		} else {
+			writer.write(filename, content);
+		}
+	}
+
+	/**
+	 * @return The image filename, once rendered by the given writer
+	 */
+	String toImage(AbstractDotWriter writer) throws Exception {
+		return text != null ? writer.toImage(filename, text) : writer.toImage(filename, content);
+	}
+
+	public String toString() {
+		return "DiagramJob filename=" + filename + " weight=" + weight;
+	}
+}
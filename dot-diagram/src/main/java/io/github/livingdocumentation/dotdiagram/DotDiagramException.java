@@ -8,4 +8,8 @@ public class DotDiagramException extends RuntimeException {
 		super(message);
 	}
 
+	public DotDiagramException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
 }
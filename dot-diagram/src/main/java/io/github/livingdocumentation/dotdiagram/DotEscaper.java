@@ -0,0 +1,150 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.IOException;
+
+/**
+ * Escapes text for the dot syntax: quoted strings, record labels (the default
+ * node shape), and line comments. Text already escaped is left as is: a
+ * backslash escapes the next char, so that dot escapes such as \n or \l, and
+ * the \{ or \" escaped by the caller, are kept; only a trailing backslash, that
+ * would escape the closing quote, is doubled.
+ * 
+ * Text is scanned with a lookup table, and when nothing needs escaping (the
+ * common case) the very same String is returned, or appended, with no copy.
+ */
+public final class DotEscaper {
+
+	private static final byte QUOTED = 1;
+
+	private static final byte RECORD = 2;
+
+	private static final byte COMMENT = 4;
+
+	private static final byte BACKSLASH = 8;
+
+	private static final byte[] TABLE = new byte[128];
+
+	static {
+		TABLE['"'] = QUOTED | RECORD;
+		TABLE['{'] = RECORD;
+		TABLE['}'] = RECORD;
+		TABLE['|'] = RECORD;
+		TABLE['<'] = RECORD;
+		TABLE['>'] = RECORD;
+		TABLE['\n'] = COMMENT;
+		TABLE['\r'] = COMMENT;
+		TABLE['\\'] = BACKSLASH;
+	}
+
+	private DotEscaper() {
+	}
+
+	/**
+	 * @return The given text escaped for a dot quoted string, e.g. an edge
+	 *         label, or the same instance if there is nothing to escape
+	 */
+	public static String escapeQuoted(String text) {
+		return escape(text, QUOTED);
+	}
+
+	public static void escapeQuoted(Appendable out, String text) throws IOException {
+		escape(out, text, QUOTED);
+	}
+
+	/**
+	 * @return The given text escaped for a record label, within a quoted
+	 *         string, or the same instance if there is nothing to escape
+	 */
+	public static String escapeRecord(String text) {
+		return escape(text, RECORD);
+	}
+
+	public static void escapeRecord(Appendable out, String text) throws IOException {
+		escape(out, text, RECORD);
+	}
+
+	/**
+	 * @return The given text on a single line for a // comment, or the same
+	 *         instance if it is already
+	 */
+	public static String escapeComment(String text) {
+		return escape(text, COMMENT);
+	}
+
+	public static void escapeComment(Appendable out, String text) throws IOException {
+		escape(out, text, COMMENT);
+	}
+
+	private static String escape(String text, byte kind) {
+		final int first = firstEscape(text, kind);
+		if (first == -1) {
+			return text;
+		}
+		final StringBuilder sb = new StringBuilder(text.length() + 8);
+		try {
+			escape(sb, text, first, kind);
+		} catch (IOException e) {
+			// cannot happen with a StringBuilder
+			throw new DotDiagramException("Errors escaping into memory", e);
+		}
+		return sb.toString();
+	}
+
+	private static void escape(Appendable out, String text, byte kind) throws IOException {
+		final int first = firstEscape(text, kind);
+		if (first == -1) {
+			out.append(text);
+		} else {
+			escape(out, text, first, kind);
+		}
+	}
+
+	/**
+	 * @return The index of the first char to escape, or -1 if none
+	 */
+	private static int firstEscape(String text, byte kind) {
+		if (text == null) {
+			return -1;
+		}
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (c < 128 && TABLE[c] != 0) {
+				if ((TABLE[c] & kind) != 0) {
+					return i;
+				}
+				if (TABLE[c] == BACKSLASH && kind != COMMENT) {
+					if (i == length - 1) {
+						return i;
+					}
+					i++;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static void escape(Appendable out, String text, int first, byte kind) throws IOException {
+		out.append(text, 0, first);
+		final int length = text.length();
+		for (int i = first; i < length; i++) {
+			final char c = text.charAt(i);
+			final byte flags = c < 128 ? TABLE[c] : 0;
+			if ((flags & kind) != 0) {
+				if (kind == COMMENT) {
+					out.append(' ');
+				} else {
+					out.append('\\').append(c);
+				}
+			} else if (flags == BACKSLASH && kind != COMMENT) {
+				if (i == length - 1) {
+					out.append("\\\\");
+				} else {
+					out.append(c).append(text.charAt(++i));
+				}
+			} else {
+				out.append(c);
+			}
+		}
+	}
+}
@@ -1,35 +1,149 @@
 package io.github.livingdocumentation.dotdiagram;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A simple API to generate Dot (Graphviz) files from a tree of Node and
  * Associations. The output is the content of a dot file.
  */
 @SuppressWarnings({ "unchecked", "rawtypes" })
-public final class DotGraph implements Renderable {
+public final class DotGraph implements Renderable, Closeable {
 
 	private static final String NODE_ID_PREFIX = "c";
 	private static final String CLUSTER_PREFIX = "cluster_";
 
 	private final AbstractNode root;
 
-	private final NodeRegistry registry = new NodeRegistry();
+	private final NodeRegistry registry;
 
 	public DotGraph(final String title) {
-		this.root = new Digraph(registry, title);
+		this(title, null);
 	}
 
 	public DotGraph(final String title, String direction) {
+		this(new NodeRegistry(), title, direction);
+	}
+
+	private DotGraph(NodeRegistry registry, String title, String direction) {
+		this.registry = registry;
 		this.root = new Digraph(registry, title, direction);
+		if (registry.columns != null) {
+			registry.columns.root = (Digraph) root;
+		}
+	}
+
+	/**
+	 * @return A graph that many threads can fill at once; the node ids are
+	 *         derived from the order of the node keys, hence the rendering
+	 *         does not depend on the threads scheduling, as long as it only
+	 *         happens once all the nodes have been added. Each node should
+	 *         still be decorated (label, options...) by one thread at a time.
+	 */
+	public static DotGraph concurrent(final String title) {
+		return concurrent(title, null);
+	}
+
+	public static DotGraph concurrent(final String title, String direction) {
+		return new DotGraph(new NodeRegistry(true), title, direction);
+	}
+
+	/**
+	 * @return A graph with the same API and the exact same output, for graphs
+	 *         of millions of nodes: its nodes and associations are rows in
+	 *         primitive columns instead of objects, the nodes, clusters and
+	 *         associations returned being only views of their rows, to be
+	 *         used and dropped. Not thread-safe; the queries on associations
+	 *         scan them all, and the rendering is never parallel nor cached.
+	 */
+	public static DotGraph columnar(final String title) {
+		return columnar(title, null);
+	}
+
+	public static DotGraph columnar(final String title, String direction) {
+		return columnar(title, direction, null);
+	}
+
+	/**
+	 * @param directory
+	 *            The directory of the spill files, or null for the default
+	 *            temporary directory
+	 * @param heapThreshold
+	 *            The number of bytes of strings and associations to keep on
+	 *            the heap before spilling
+	 * @return A columnar graph spilling its strings and associations to
+	 *         memory-mapped files past the threshold, to be closed once
+	 *         rendered
+	 */
+	public static DotGraph spilling(String title, String direction, File directory, long heapThreshold) {
+		return columnar(title, direction, new SpillStore(directory, heapThreshold));
+	}
+
+	public static DotGraph spilling(String title, long heapThreshold) {
+		return spilling(title, null, null, heapThreshold);
+	}
+
+	private static DotGraph columnar(String title, String direction, SpillStore spill) {
+		final NodeRegistry registry = new NodeRegistry();
+		registry.columns = new GraphColumns(registry, spill);
+		return new DotGraph(registry, title, direction);
+	}
+
+	/**
+	 * @return The formatter of the node labels of this graph, unless the
+	 *         render options give another one: its own formatter if set,
+	 *         otherwise the shared one
+	 */
+	public LabelFormatter getLabelFormatter() {
+		final LabelFormatter own = registry.labelFormatter;
+		return own != null ? own : LabelFormatter.shared();
+	}
+
+	/**
+	 * @param labelFormatter
+	 *            A formatter of its own for this graph, with its own cache and
+	 *            counters, or null for the shared one
+	 */
+	public void setLabelFormatter(LabelFormatter labelFormatter) {
+		registry.labelFormatter = labelFormatter;
+	}
+
+	/**
+	 * @return The columns of a columnar graph, or null
+	 */
+	GraphColumns columns() {
+		return registry.columns;
+	}
+
+	/**
+	 * @return The number of bytes spilled to memory-mapped files so far by a
+	 *         spilling graph, 0 otherwise
+	 */
+	public long getSpilledBytes() {
+		return registry.columns == null ? 0 : registry.columns.spilledBytes();
+	}
+
+	/**
+	 * Deletes the spill files of a spilling graph, which cannot be used
+	 * afterwards; does nothing for the other graphs
+	 */
+	public void close() throws IOException {
+		if (registry.columns != null) {
+			registry.columns.close();
+		}
 	}
 
 	public Digraph getDigraph() {
@@ -40,39 +154,521 @@ public final class DotGraph implements Renderable {
 		return registry.nodeUniqueId(id);
 	}
 
+	/**
+	 * @return The unique id of the given long key, without boxing it; the
+	 *         same as preloadNode(Long.valueOf(id)), but not as for an Integer
+	 */
+	public String preloadNodeById(long id) {
+		return registry.uniqueId(registry.nodeOrdinal(id));
+	}
+
 	public String render() {
 		return root.render();
 	}
 
+	public void render(Appendable out) throws IOException {
+		root.render(out);
+	}
+
+	public String render(final RenderOptions renderOptions) {
+		return DotRenderer.toString(out -> render(out, renderOptions));
+	}
+
+	public void render(Appendable out, RenderOptions renderOptions) throws IOException {
+		final DotMetricsListener listener = renderOptions.getMetricsListener();
+		if (listener == DotMetricsListener.NONE) {
+			root.render(out, renderOptions);
+			return;
+		}
+		final long start = System.nanoTime();
+		root.render(out, renderOptions);
+		listener.graphRendered(root.getId(), GraphStatistics.of(this), System.nanoTime() - start);
+	}
+
+	/**
+	 * Streams the dot content into the given writer, which is flushed but not
+	 * closed
+	 */
+	public void renderTo(Writer writer) throws IOException {
+		final Writer out = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+		render(out);
+		out.flush();
+	}
+
 	public String toString() {
 		return "DotGraph root: " + root;
 	}
 
 	/**
-	 * Stores unique node id by String node key
+	 * Stores unique node id by node key; each node key is given an increasing
+	 * int ordinal, its unique id being only formatted from it when needed. Long
+	 * keys are kept unboxed, whether given as long or as Long; the other
+	 * integral keys (Integer...) remain distinct object keys.
+	 * 
+	 * In concurrent mode the keys are spread over lock-striped maps, and as the
+	 * ordinals then depend on the threads scheduling, the unique ids are
+	 * derived from the rank of each key in the sorted set of all keys instead:
+	 * the new keys are queued without locking, then ranked incrementally on
+	 * the next read of an id, and all the ranks are only snapshot into arrays
+	 * when the graph is rendered.
+	 * 
+	 * It also indexes by ordinal the first node added for each key, wherever
+	 * it is in the tree of clusters, and all the associations by source and by
+	 * target, except in a columnar graph, whose columns hold the nodes and
+	 * associations instead.
 	 */
 	public static final class NodeRegistry {
 
-		private final Map<Object, String> nodeUids = new HashMap<Object, String>();
+		private static final int CONCURRENT_STRIPES = 64;
+
+		private final boolean concurrent;
+
+		private final ObjectIntHashMap[] objectOrdinals;
+
+		private final LongIntHashMap[] longOrdinals;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		private final Queue<RankedKey> unrankedKeys;
+
+		private final KeyRanking ranking;
+
+		private volatile int[] displayOrdinals;
+
+		private volatile int[] ordinalsByDisplay;
+
+		private AbstractNode[] nodesByOrdinal = new AbstractNode[16];
+
+		private final AssociationIndex associationIndex = new AssociationIndex();
+
+		/**
+		 * The columns of a columnar graph, or null
+		 */
+		GraphColumns columns;
+
+		/**
+		 * The own formatter of the graph, or null for the shared one
+		 */
+		volatile LabelFormatter labelFormatter;
+
+		private volatile BitSet forwardReferenced = new BitSet();
+
+		private volatile int styleVersion = 0;
+
+		public NodeRegistry() {
+			this(false);
+		}
+
+		public NodeRegistry(boolean concurrent) {
+			this.concurrent = concurrent;
+			final int stripes = concurrent ? CONCURRENT_STRIPES : 1;
+			objectOrdinals = new ObjectIntHashMap[stripes];
+			longOrdinals = new LongIntHashMap[stripes];
+			for (int i = 0; i < stripes; i++) {
+				objectOrdinals[i] = new ObjectIntHashMap();
+				longOrdinals[i] = new LongIntHashMap();
+			}
+			unrankedKeys = concurrent ? new ConcurrentLinkedQueue<RankedKey>() : null;
+			ranking = concurrent ? new KeyRanking(NodeRegistry::compareKeys) : null;
+		}
+
+		public boolean isConcurrent() {
+			return concurrent;
+		}
+
+		/**
+		 * @return The ordinal of the given node key, or -1 if not registered
+		 */
+		public int existingOrdinal(Object id) {
+			if (id instanceof Long) {
+				return existingOrdinal(((Long) id).longValue());
+			}
+			if (!concurrent) {
+				return objectOrdinals[0].get(id);
+			}
+			final ObjectIntHashMap stripe = objectOrdinals[stripe(id == null ? 0 : id.hashCode())];
+			synchronized (stripe) {
+				return stripe.get(id);
+			}
+		}
+
+		/**
+		 * @return The ordinal of the given node key, or -1 if not registered
+		 */
+		public int existingOrdinal(long id) {
+			if (!concurrent) {
+				return longOrdinals[0].get(id);
+			}
+			final LongIntHashMap stripe = longOrdinals[stripe(Long.hashCode(id))];
+			synchronized (stripe) {
+				return stripe.get(id);
+			}
+		}
+
+		public int nodeOrdinal(Object id) {
+			if (id instanceof Long) {
+				return nodeOrdinal(((Long) id).longValue());
+			}
+			if (!concurrent) {
+				return ordinal(objectOrdinals[0], id);
+			}
+			final ObjectIntHashMap stripe = objectOrdinals[stripe(id == null ? 0 : id.hashCode())];
+			synchronized (stripe) {
+				return ordinal(stripe, id);
+			}
+		}
+
+		public int nodeOrdinal(long id) {
+			if (!concurrent) {
+				return ordinal(longOrdinals[0], id);
+			}
+			final LongIntHashMap stripe = longOrdinals[stripe(Long.hashCode(id))];
+			synchronized (stripe) {
+				return ordinal(stripe, id);
+			}
+		}
+
+		private int ordinal(ObjectIntHashMap ordinals, Object id) {
+			int ordinal = ordinals.get(id);
+			if (ordinal == -1) {
+				ordinal = ordinals.getOrPut(id, count.getAndIncrement());
+				if (concurrent) {
+					// while holding the lock of the stripe
+					unrankedKeys.add(new RankedKey(ordinal, id));
+				}
+			}
+			return ordinal;
+		}
+
+		private int ordinal(LongIntHashMap ordinals, long id) {
+			int ordinal = ordinals.get(id);
+			if (ordinal == -1) {
+				ordinal = ordinals.getOrPut(id, count.getAndIncrement());
+				if (concurrent) {
+					unrankedKeys.add(new RankedKey(ordinal, Long.valueOf(id)));
+				}
+			}
+			return ordinal;
+		}
+
+		private static int stripe(int hash) {
+			return (hash * 0x9E3779B9) >>> (32 - 6);
+		}
+
+		/**
+		 * @return The number used in the unique id of the node of the given
+		 *         ordinal; in concurrent mode it only gets stable once all the
+		 *         nodes are registered
+		 */
+		public int displayOrdinal(int ordinal) {
+			if (!concurrent) {
+				return ordinal;
+			}
+			final int[] ranks = displayOrdinals;
+			if (ranks != null && ranks.length == count.get()) {
+				return ranks[ordinal];
+			}
+			synchronized (ranking) {
+				rankNewKeys();
+				return ranking.rank(ordinal);
+			}
+		}
+
+		/**
+		 * Ranks the keys registered since the last time, if any; to be called
+		 * while holding the lock of the ranking
+		 */
+		private void rankNewKeys() {
+			for (RankedKey key = unrankedKeys.poll(); key != null; key = unrankedKeys.poll()) {
+				ranking.add(key.ordinal, key.key);
+			}
+		}
+
+		/**
+		 * Snapshots the rank of every key, for the many ids read while
+		 * rendering, unless they are all registered and ranked already
+		 */
+		void rankKeys() {
+			if (!concurrent) {
+				return;
+			}
+			synchronized (ranking) {
+				rankNewKeys();
+				final int[] ranks = displayOrdinals;
+				if (ranking.size() != count.get() || ranks != null && ranks.length == ranking.size()) {
+					// still being registered, or already snapshot
+					return;
+				}
+				final int[] ordinals = ranking.ordinals();
+				final int[] displays = new int[ordinals.length];
+				for (int i = 0; i < ordinals.length; i++) {
+					displays[ordinals[i]] = i;
+				}
+				ordinalsByDisplay = ordinals;
+				displayOrdinals = displays;
+			}
+		}
+
+		/**
+		 * Orders the keys: long keys first in numerical order, then the other
+		 * keys in their natural order when comparable, by their string
+		 * representation otherwise
+		 */
+		private static int compareKeys(Object key1, Object key2) {
+			if (key1 instanceof Long) {
+				return key2 instanceof Long ? ((Long) key1).compareTo((Long) key2) : -1;
+			}
+			if (key2 instanceof Long) {
+				return 1;
+			}
+			if (key1 == null || key2 == null) {
+				return key1 == key2 ? 0 : key1 == null ? -1 : 1;
+			}
+			if (key1 instanceof Comparable && key1.getClass() == key2.getClass()) {
+				return ((Comparable) key1).compareTo(key2);
+			}
+			final int byClass = key1.getClass().getName().compareTo(key2.getClass().getName());
+			return byClass != 0 ? byClass : String.valueOf(key1).compareTo(String.valueOf(key2));
+		}
+
+		/**
+		 * Records the styled nodes referenced by an edge before their group in
+		 * the style classes rendering of the whole graph, which must carry
+		 * their options explicitly
+		 */
+		void forwardReferenced(BitSet ordinals) {
+			if (!ordinals.equals(forwardReferenced)) {
+				forwardReferenced = ordinals;
+				styleVersion++;
+			}
+		}
+
+		boolean isForwardReferenced(int ordinal) {
+			return forwardReferenced.get(ordinal);
+		}
+
+		/**
+		 * @return A number that changes whenever the forward referenced nodes
+		 *         changed
+		 */
+		int styleVersion() {
+			return styleVersion;
+		}
+
+		/**
+		 * @return The formatter of the given options, or else the own
+		 *         formatter of the graph, or else the shared one
+		 */
+		LabelFormatter labelFormatter(RenderOptions renderOptions) {
+			final LabelFormatter given = renderOptions.getLabelFormatter();
+			if (given != null) {
+				return given;
+			}
+			final LabelFormatter own = labelFormatter;
+			return own != null ? own : LabelFormatter.shared();
+		}
+
+		public String uniqueId(int ordinal) {
+			return NODE_ID_PREFIX + displayOrdinal(ordinal);
+		}
+
+		/**
+		 * @return The ordinal of the node of the given unique id, or -1 if
+		 *         there is no such node
+		 */
+		public int ordinalOf(String uniqueId) {
+			final int display = displayOf(uniqueId);
+			if (display < 0 || display >= count.get()) {
+				return -1;
+			}
+			if (!concurrent) {
+				return display;
+			}
+			final int[] ordinals = ordinalsByDisplay;
+			if (ordinals != null && ordinals.length == count.get()) {
+				return ordinals[display];
+			}
+			synchronized (ranking) {
+				rankNewKeys();
+				return ranking.select(display);
+			}
+		}
+
+		/**
+		 * Indexes the given node by its ordinal, unless a node is already
+		 * indexed for it
+		 */
+		void index(AbstractNode node) {
+			if (!concurrent) {
+				indexNode(node);
+				return;
+			}
+			synchronized (this) {
+				indexNode(node);
+			}
+		}
 
-		private int count = 0;
+		private void indexNode(AbstractNode node) {
+			if (node.ordinal >= nodesByOrdinal.length) {
+				nodesByOrdinal = Arrays.copyOf(nodesByOrdinal, Math.max(node.ordinal + 1, nodesByOrdinal.length * 2));
+			}
+			if (nodesByOrdinal[node.ordinal] == null) {
+				nodesByOrdinal[node.ordinal] = node;
+			}
+		}
+
+		void index(Association association) {
+			if (!concurrent) {
+				associationIndex.add(association);
+				return;
+			}
+			synchronized (associationIndex) {
+				associationIndex.add(association);
+			}
+		}
+
+		/**
+		 * @return The index of all the associations, to be only used while
+		 *         holding its lock in concurrent mode
+		 */
+		AssociationIndex associationIndex() {
+			return associationIndex;
+		}
+
+		/**
+		 * @return The first node added for the given ordinal, or null if none
+		 */
+		public AbstractNode node(int ordinal) {
+			if (columns != null) {
+				return columns.firstNode(ordinal);
+			}
+			if (!concurrent) {
+				return ordinal >= 0 && ordinal < nodesByOrdinal.length ? nodesByOrdinal[ordinal] : null;
+			}
+			synchronized (this) {
+				return ordinal >= 0 && ordinal < nodesByOrdinal.length ? nodesByOrdinal[ordinal] : null;
+			}
+		}
+
+		/**
+		 * @return A number that changes whenever the unique ids of the
+		 *         registered nodes may have changed, which only happens in
+		 *         concurrent mode
+		 */
+		int idsVersion() {
+			return concurrent ? count.get() : 0;
+		}
 
 		public String existingUniqueId(Object id) {
-			return nodeUids.get(id);
+			final int ordinal = existingOrdinal(id);
+			return ordinal == -1 ? null : uniqueId(ordinal);
 		}
 
 		public String nodeUniqueId(Object id) {
-			String nodeUid = nodeUids.get(id);
-			if (nodeUid != null) {
-				return nodeUid;
-			}
-			nodeUid = NODE_ID_PREFIX + count++;
-			nodeUids.put(id, nodeUid);
-			return nodeUid;
+			return uniqueId(nodeOrdinal(id));
 		}
 
 		public String toString() {
-			return "NodeRegistry: " + nodeUids.size() + " nodes registered";
+			return "NodeRegistry: " + count + " nodes registered" + (concurrent ? " (concurrent)" : "");
+		}
+	}
+
+	/**
+	 * A key registered in concurrent mode, waiting to be ranked
+	 */
+	private static final class RankedKey {
+
+		private final int ordinal;
+
+		private final Object key;
+
+		RankedKey(int ordinal, Object key) {
+			this.ordinal = ordinal;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * The child nodes of a node, kept sorted by their registry ordinal so that
+	 * they are always rendered in the same order, without any sorting
+	 */
+	static final class NodeList {
+
+		/**
+		 * Shared by all the nodes without children, never to be added to
+		 */
+		static final NodeList EMPTY = new NodeList();
+
+		private static final AbstractNode[] NONE = new AbstractNode[0];
+
+		private AbstractNode[] elements = NONE;
+
+		private int size = 0;
+
+		public int size() {
+			return size;
+		}
+
+		public AbstractNode get(int index) {
+			return elements[index];
+		}
+
+		/**
+		 * @return The backing array, only valid up to the size
+		 */
+		AbstractNode[] elements() {
+			return elements;
+		}
+
+		public AbstractNode find(int ordinal) {
+			final int index = indexOf(ordinal);
+			return index < 0 ? null : elements[index];
+		}
+
+		public void add(AbstractNode node) {
+			// nodes are mostly added in the order of their registration
+			int index = size;
+			if (size > 0 && elements[size - 1].ordinal > node.ordinal) {
+				index = -indexOf(node.ordinal) - 1;
+			}
+			if (size == elements.length) {
+				elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+			}
+			System.arraycopy(elements, index, elements, index + 1, size - index);
+			elements[index] = node;
+			size++;
+		}
+
+		private int indexOf(int ordinal) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				final int mid = (low + high) >>> 1;
+				final int midOrdinal = elements[mid].ordinal;
+				if (midOrdinal < ordinal) {
+					low = mid + 1;
+				} else if (midOrdinal > ordinal) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+	}
+
+	/**
+	 * @return The display ordinal in the given unique id, or -1 if it is not
+	 *         a unique id
+	 */
+	static int displayOf(String uniqueId) {
+		if (uniqueId == null || !uniqueId.startsWith(NODE_ID_PREFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(uniqueId.substring(NODE_ID_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
 		}
 	}
 
@@ -83,7 +679,7 @@ public final class DotGraph implements Renderable {
 
 		protected final NodeRegistry registry;
 
-		protected final String id;
+		protected final int ordinal;
 
 		protected String comment;
 
@@ -91,82 +687,201 @@ public final class DotGraph implements Renderable {
 
 		protected String options;
 
-		protected final Collection<String> stereotypes = new HashSet<String>();
+		// most nodes are leaves without stereotype, hence the shared empty
+		// containers until the first element is added, then small lists
+		// (the getters only return read-only views of them)
+
+		protected Collection<String> stereotypes = Collections.emptyList();
 
-		protected final Map nodes = new HashMap();
+		protected NodeList nodes = NodeList.EMPTY;
 
-		protected final Collection<Association> associations = new HashSet();
+		protected Collection<Association> associations = Collections.emptyList();
 
-		public AbstractNode(NodeRegistry registry, final String id) {
+		protected AbstractNode parent;
+
+		private String fragment;
+
+		private int fragmentVersion;
+
+		private int weight = -1;
+
+		public AbstractNode(NodeRegistry registry, int ordinal) {
 			this.registry = registry;
-			this.id = id;
+			this.ordinal = ordinal;
+		}
+
+		/**
+		 * @deprecated the id is no longer kept, but given by getId() from the
+		 *             ordinal
+		 */
+		@Deprecated
+		public AbstractNode(NodeRegistry registry, int ordinal, final String id) {
+			this(registry, ordinal);
+		}
+
+		/**
+		 * @return The row of this node in the columns of a columnar graph, of
+		 *         which it is then only a view; ROOT for the digraph
+		 */
+		int row() {
+			return GraphColumns.ROOT;
+		}
+
+		/**
+		 * @return true if this node is the view of a row of the columns of a
+		 *         columnar graph, which hold all its data
+		 */
+		private boolean isView() {
+			return registry.columns != null && row() != GraphColumns.ROOT;
 		}
 
 		public String getComment() {
-			return comment;
+			return isView() ? registry.columns.getComment(row()) : comment;
 		}
 
 		public AbstractNode setComment(String comment) {
+			if (isView()) {
+				registry.columns.setComment(row(), comment);
+				return this;
+			}
 			this.comment = comment;
+			invalidate();
 			return this;
 		}
 
+		/**
+		 * Drops the cached fragment of this node and of all its parents, which
+		 * include it
+		 */
+		protected void invalidate() {
+			for (AbstractNode node = this; node != null && node.fragment != null; node = node.parent) {
+				node.fragment = null;
+			}
+		}
+
+		/**
+		 * Drops the memoized weight of this node and of all its parents, which
+		 * include it
+		 */
+		private void invalidateWeight() {
+			for (AbstractNode node = this; node != null && node.weight != -1; node = node.parent) {
+				node.weight = -1;
+			}
+		}
+
 		public Node addPossibleNode(Object id) {
-			final String uid = registry.existingUniqueId(id);
-			if (uid == null) {
+			final int ordinal = registry.existingOrdinal(id);
+			if (ordinal == -1) {
 				return null;
 			}
-			Node node = (Node) nodes.get(uid);
-			if (node == null) {
-				node = new Node(registry, uid);
-				nodes.put(uid, node);
-			}
-			return node;
+			return addNodeOrdinal(ordinal);
 		}
 
 		public Node addNode(Object id) {
-			final String uid = registry.nodeUniqueId(id);
-			Node node = (Node) nodes.get(uid);
+			return addNodeOrdinal(registry.nodeOrdinal(id));
+		}
+
+		/**
+		 * @return The node of the given long key, without boxing it; the same
+		 *         node as addNode(Long.valueOf(id)), but not as for an Integer
+		 */
+		public Node addNodeById(long id) {
+			return addNodeOrdinal(registry.nodeOrdinal(id));
+		}
+
+		private Node addNodeOrdinal(int ordinal) {
+			if (registry.columns != null) {
+				return (Node) registry.columns.view(registry.columns.addNode(row(), ordinal));
+			}
+			if (registry.isConcurrent()) {
+				synchronized (this) {
+					return findOrAddNode(ordinal);
+				}
+			}
+			return findOrAddNode(ordinal);
+		}
+
+		private Node findOrAddNode(int ordinal) {
+			Node node = (Node) nodes.find(ordinal);
 			if (node == null) {
-				node = new Node(registry, uid);
-				nodes.put(uid, node);
+				node = new Node(registry, ordinal);
+				node.parent = this;
+				addChild(node);
+				registry.index(node);
+				invalidate();
+				invalidateWeight();
 			}
 			return node;
 		}
 
 		public Cluster addCluster(Object id) {
-			final String uid = registry.nodeUniqueId(id);
-			Cluster node = (Cluster) nodes.get(uid);
+			final int ordinal = registry.nodeOrdinal(id);
+			if (registry.columns != null) {
+				return (Cluster) registry.columns.view(registry.columns.addCluster(row(), ordinal));
+			}
+			if (registry.isConcurrent()) {
+				synchronized (this) {
+					return findOrAddCluster(ordinal);
+				}
+			}
+			return findOrAddCluster(ordinal);
+		}
+
+		private Cluster findOrAddCluster(int ordinal) {
+			Cluster node = (Cluster) nodes.find(ordinal);
 			if (node == null) {
-				node = new Cluster(registry, uid);
-				nodes.put(uid, node);
+				node = new Cluster(registry, ordinal);
+				node.parent = this;
+				addChild(node);
+				registry.index(node);
+				invalidate();
+				invalidateWeight();
 			}
 			return node;
 		}
 
+		private void addChild(AbstractNode node) {
+			if (nodes == NodeList.EMPTY) {
+				nodes = new NodeList();
+			}
+			nodes.add(node);
+		}
+
+		/**
+		 * Adds the given stereotype, unless already there; the stereotypes are
+		 * rendered in the order they were first added
+		 */
 		public AbstractNode addStereotype(String stereotype) {
-			stereotypes.add(DotRenderer.stereotype(stereotype));
+			if (isView()) {
+				registry.columns.addStereotype(row(), stereotype);
+				return this;
+			}
+			final String formatted = DotRenderer.stereotype(stereotype);
+			if (stereotypes.isEmpty()) {
+				stereotypes = new ArrayList<String>(1);
+			}
+			if (!stereotypes.contains(formatted)) {
+				stereotypes.add(formatted);
+			}
+			invalidate();
 			return this;
 		}
 
 		public Association addExistingAssociation(Object sourceId, Object targetId) {
-			final String uid = registry.existingUniqueId(sourceId);
-			final String uid2 = registry.existingUniqueId(targetId);
-			if (uid != null && uid2 != null) {
-				final Association association = new Association(uid, uid2);
-				associations.add(association);
-				return association;
+			final int source = registry.existingOrdinal(sourceId);
+			final int target = registry.existingOrdinal(targetId);
+			if (source != -1 && target != -1) {
+				return addAssociationOrdinals(source, target);
 			}
 			return null;
 		}
 
 		public Association addExistingAssociation(Object sourceId, Object targetId, String label, String comment,
 				String options) {
-			final String uid = registry.existingUniqueId(sourceId);
-			final String uid2 = registry.existingUniqueId(targetId);
-			if (uid != null && uid2 != null) {
-				final Association association = new Association(uid, uid2);
-				associations.add(association);
+			final int source = registry.existingOrdinal(sourceId);
+			final int target = registry.existingOrdinal(targetId);
+			if (source != -1 && target != -1) {
+				final Association association = addAssociationOrdinals(source, target);
 				if (label != null) {
 					association.setLabel(label);
 				}
@@ -182,67 +897,250 @@ public final class DotGraph implements Renderable {
 		}
 
 		public Association addAssociation(Object sourceId, Object targetId) {
-			final String uid = registry.nodeUniqueId(sourceId);
-			final String uid2 = registry.nodeUniqueId(targetId);
-			if (uid != null && uid2 != null) {
-				final Association association = new Association(uid, uid2);
-				associations.add(association);
-				return association;
+			return addAssociationOrdinals(registry.nodeOrdinal(sourceId), registry.nodeOrdinal(targetId));
+		}
+
+		/**
+		 * Adds an association between long keys, without boxing them; the
+		 * same as between Long keys, but not as between Integer keys
+		 */
+		public Association addAssociationById(long sourceId, long targetId) {
+			return addAssociationOrdinals(registry.nodeOrdinal(sourceId), registry.nodeOrdinal(targetId));
+		}
+
+		private Association addAssociationOrdinals(int source, int target) {
+			if (registry.columns != null) {
+				return registry.columns.associationView(registry.columns.addAssociation(row(), source, target));
 			}
-			return null;
+			final Association association = new Association(registry, source, target);
+			association.owner = this;
+			if (registry.isConcurrent()) {
+				synchronized (this) {
+					appendAssociation(association);
+				}
+			} else {
+				appendAssociation(association);
+			}
+			registry.index(association);
+			invalidate();
+			invalidateWeight();
+			return association;
+		}
+
+		private void appendAssociation(Association association) {
+			if (associations.isEmpty()) {
+				associations = new ArrayList<Association>(2);
+			}
+			associations.add(association);
 		}
 
 		public String getLabel() {
-			return label;
+			return isView() ? registry.columns.getLabel(row()) : label;
 		}
 
 		public AbstractNode setLabel(String label) {
+			if (isView()) {
+				registry.columns.setLabel(row(), label);
+				return this;
+			}
 			this.label = label;
+			invalidate();
 			return this;
 		}
 
 		public String getOptions() {
-			return options;
+			return isView() ? registry.columns.getOptions(row()) : options;
 		}
 
 		public AbstractNode setOptions(String options) {
+			if (isView()) {
+				registry.columns.setOptions(row(), options);
+				return this;
+			}
 			this.options = options;
+			invalidate();
 			return this;
 		}
 
+		/**
+		 * @return A read-only view of the associations added to this node, to
+		 *         be added through the addAssociation methods, which keep the
+		 *         index and the cached fragments up to date
+		 */
 		public Collection getAssociations() {
-			return associations;
+			if (registry.columns != null) {
+				return Collections.unmodifiableCollection(registry.columns.associations(row()));
+			}
+			return Collections.unmodifiableCollection(associations);
 		}
 
 		public String getId() {
-			return id;
+			return registry.uniqueId(ordinal);
+		}
+
+		/**
+		 * @return The digraph or cluster this node was added to, or null for
+		 *         the digraph itself
+		 */
+		public AbstractNode getParent() {
+			return isView() ? registry.columns.parentView(row()) : parent;
 		}
 
+		/**
+		 * @return A read-only view of the stereotypes of this node, in the
+		 *         order they were first added, to be added through
+		 *         addStereotype, which keeps the cached fragments up to date
+		 */
 		public Collection<String> getStereotypes() {
-			return stereotypes;
+			return Collections.unmodifiableCollection(stereotypes());
+		}
+
+		Collection<String> stereotypes() {
+			return isView() ? registry.columns.stereotypes(row()) : stereotypes;
+		}
+
+		public String render() {
+			return DotRenderer.toString(this::render);
 		}
 
-		protected void renderAssociations(final StringBuffer out) {
-			Iterator it = associations.iterator();
-			while (it.hasNext()) {
-				Renderable renderable = (Renderable) it.next();
-				out.append(renderable.render());
+		public void render(Appendable out) throws IOException {
+			render(out, RenderOptions.defaults());
+		}
+
+		/**
+		 * Renders this node, reusing its fragment rendered last time if the
+		 * fragment cache is on and nothing changed in this subtree since
+		 */
+		public void render(Appendable out, RenderOptions renderOptions) throws IOException {
+			if (registry.columns != null) {
+				registry.columns.render(out, this, renderOptions);
+				return;
+			}
+			if (!renderOptions.isFragmentCache()) {
+				renderContent(out, renderOptions);
+				return;
+			}
+			// the fragments of the style classes and compact modes differ
+			final int version = (31 * registry.idsVersion() + registry.styleVersion()) << 2
+					| (renderOptions.isStyleClasses() ? 2 : 0)
+					| (renderOptions.isCompact() ? 1 : 0);
+			String cached = fragment;
+			if (cached == null || fragmentVersion != version) {
+				final StringBuilder sb = new StringBuilder();
+				renderContent(sb, renderOptions);
+				cached = sb.toString();
+				fragment = cached;
+				fragmentVersion = version;
+			}
+			out.append(cached);
+		}
+
+		protected abstract void renderContent(Appendable out, RenderOptions renderOptions) throws IOException;
+
+		/**
+		 * @return The number of nodes and associations in this subtree, as an
+		 *         estimate of its rendering cost; memoized until something is
+		 *         added to the subtree, so that the nested parallel renderings
+		 *         do not walk it again at every level
+		 */
+		int weight() {
+			if (registry.columns != null) {
+				return registry.columns.weight(row());
 			}
+			int weight = this.weight;
+			if (weight == -1) {
+				weight = 1 + associations.size();
+				for (int i = 0; i < nodes.size(); i++) {
+					weight += nodes.get(i).weight();
+				}
+				this.weight = weight;
+			}
+			return weight;
+		}
+
+		protected void renderAssociations(final Appendable out) throws IOException {
+			renderOwnAssociations(out, false);
 		}
 
-		protected void renderNodes(final StringBuffer out) {
-			final List<Renderable> values = new ArrayList<Renderable>(nodes.values());
-			final Comparator comp = new Comparator<Renderable>() {
+		void renderOwnAssociations(final Appendable out, boolean compact) throws IOException {
+			for (Association association : orderedAssociations()) {
+				association.render(out, compact, true);
+			}
+		}
 
-				public int compare(Renderable r1, Renderable r2) {
-					return r1.toString().compareTo(r2.toString());
+		/**
+		 * Renders the associations of this digraph or cluster; in the style
+		 * classes mode, along with the associations of its nodes, grouped by
+		 * style
+		 */
+		protected void renderAssociations(final Appendable out, RenderOptions renderOptions) throws IOException {
+			if (!renderOptions.isStyleClasses()) {
+				renderOwnAssociations(out, renderOptions.isCompact());
+				return;
+			}
+			final List<Association> scope = new ArrayList<Association>();
+			final AbstractNode[] ordered = orderedNodes();
+			final int size = childCount();
+			for (int i = 0; i < size; i++) {
+				if (ordered[i] instanceof Node && ordered[i].getLabel() != null) {
+					scope.addAll(ordered[i].orderedAssociations());
 				}
-			};
-			Collections.sort(values, comp);
-			Iterator it = values.iterator();
-			while (it.hasNext()) {
-				Renderable renderable = (Renderable) it.next();
-				out.append(renderable.render());
+			}
+			scope.addAll(orderedAssociations());
+			StyleClasses.renderAssociations(out, scope, renderOptions.isCompact());
+		}
+
+		Collection<Association> orderedAssociations() {
+			if (registry.columns != null) {
+				return registry.columns.associations(row());
+			}
+			if (registry.isConcurrent()) {
+				// the insertion order depends on the threads scheduling
+				final List<Association> sorted = new ArrayList<Association>(associations);
+				Collections.sort(sorted, new AssociationOrder(registry));
+				return sorted;
+			}
+			return associations;
+		}
+
+		/**
+		 * @return The child nodes in display order, in an array possibly
+		 *         longer than their count
+		 */
+		AbstractNode[] orderedNodes() {
+			if (registry.columns != null) {
+				return registry.columns.children(row());
+			}
+			AbstractNode[] ordered = nodes.elements();
+			if (registry.isConcurrent()) {
+				// the ordinals depend on the threads scheduling, not the ids
+				ordered = Arrays.copyOf(ordered, nodes.size());
+				Arrays.sort(ordered, (n1, n2) -> Integer.compare(registry.displayOrdinal(n1.ordinal),
+						registry.displayOrdinal(n2.ordinal)));
+			}
+			return ordered;
+		}
+
+		/**
+		 * @return The number of child nodes
+		 */
+		int childCount() {
+			return registry.columns != null ? registry.columns.childCount(row()) : nodes.size();
+		}
+
+		protected void renderNodes(final Appendable out, RenderOptions renderOptions) throws IOException {
+			final int size = childCount();
+			final AbstractNode[] ordered = orderedNodes();
+			if (renderOptions.isStyleClasses()) {
+				StyleClasses.renderNodes(out, ordered, size, renderOptions);
+				return;
+			}
+			if (ParallelRendering.isWorthIt(ordered, size, renderOptions)) {
+				ParallelRendering.render(out, ordered, size, renderOptions);
+				return;
+			}
+			for (int i = 0; i < size; i++) {
+				ordered[i].render(out, renderOptions);
 			}
 		}
 
@@ -261,11 +1159,15 @@ public final class DotGraph implements Renderable {
 			if (this == other) {
 				return true;
 			}
-			return other.id.equals(id);
+			if (other.ordinal != ordinal) {
+				return false;
+			}
+			// digraphs have no ordinal, only their title
+			return ordinal != -1 || other.getId().equals(getId());
 		}
 
 		public int hashCode() {
-			return id.hashCode();
+			return ordinal == -1 ? getId().hashCode() : ordinal;
 		}
 
 	}
@@ -273,42 +1175,38 @@ public final class DotGraph implements Renderable {
 	/**
 	 * Represents an actual node (dot node element)
 	 */
-	public static final class Node extends AbstractNode {
+	public static class Node extends AbstractNode {
 
-		public Node(NodeRegistry registry, String id) {
-			super(registry, id);
+		public Node(NodeRegistry registry, int ordinal) {
+			super(registry, ordinal);
 		}
 
-		public String render() {
+		protected void renderContent(Appendable out, RenderOptions renderOptions) throws IOException {
+			final String label = getLabel();
 			if (label == null) {
-				return "";
+				return;
 			}
-			final StringBuffer out = new StringBuffer();
-			if (comment != null) {
-				out.append(DotRenderer.withDotNewLine(comment));
+			final boolean compact = renderOptions.isCompact();
+			final String comment = getComment();
+			if (comment != null && !compact) {
+				DotRenderer.withDotNewLine(out, comment);
 			}
 
-			final List<String> cells = new ArrayList<String>();
-			cells.add(label);
-			if (!stereotypes.isEmpty()) {
-				cells.addAll(stereotypes);
+			final String wrapText = registry.labelFormatter(renderOptions).format(label, stereotypes(), 20);
+			if (renderOptions.isStyleClasses()) {
+				// the options and associations are rendered grouped by style,
+				// unless an edge already created this node
+				DotRenderer.node(out, getId(), wrapText, registry.isForwardReferenced(ordinal) ? getOptions() : null,
+						compact);
+				return;
 			}
-			final String content = DotRenderer.toLines(cells);
-
-			final String wrapText = DotRenderer.wrapText(content, 20);
-			out.append(DotRenderer.node(id, wrapText, options));
-
-			Iterator it = associations.iterator();
-			while (it.hasNext()) {
-				AbstractAssociation abstractAssociation = (AbstractAssociation) it.next();
+			DotRenderer.node(out, getId(), wrapText, getOptions(), compact);
 
-				out.append(abstractAssociation.render());
-			}
-			return out.toString();
+			renderOwnAssociations(out, compact);
 		}
 
 		public String toString() {
-			return "Node" + id;
+			return "Node" + getId();
 		}
 	}
 
@@ -317,6 +1215,8 @@ public final class DotGraph implements Renderable {
 	 */
 	public static final class Digraph extends AbstractNode {
 
+		private final String title;
+
 		private final String dir;
 
 		public Digraph(NodeRegistry registry, String title) {
@@ -324,72 +1224,266 @@ public final class DotGraph implements Renderable {
 		}
 
 		public Digraph(NodeRegistry registry, String title, String dir) {
-			super(registry, title);
+			super(registry, -1);
+			this.title = title;
 			this.dir = dir;
 			setLabel(title);
 		}
 
-		public String render() {
-			final StringBuffer out = new StringBuffer();
-			out.append(DotRenderer.openGraph(label, dir));
+		public String getId() {
+			return title;
+		}
+
+		/**
+		 * @return The rankdir of the graph, such as LR, or null for the
+		 *         default top to bottom
+		 */
+		public String getDirection() {
+			return dir;
+		}
+
+		protected void renderContent(Appendable out, RenderOptions renderOptions) throws IOException {
+			registry.rankKeys();
+			if (renderOptions.isStyleClasses()) {
+				registry.forwardReferenced(StyleClasses.forwardReferenced(this));
+			}
+			DotRenderer.openGraph(out, label, dir, renderOptions.isCompact());
 
-			renderNodes(out);
-			renderAssociations(out);
+			renderNodes(out, renderOptions);
+			renderAssociations(out, renderOptions);
 
-			out.append(DotRenderer.closeGraph());
-			return out.toString();
+			DotRenderer.closeGraph(out, renderOptions.isCompact());
 		}
 
 		public String toString() {
-			return "Digraph " + id;
+			return "Digraph " + title;
 		}
 
 		public AbstractNode findNode(String identifier) {
-			final String uid = registry.nodeUniqueId(id);
-			Iterator it = nodes.values().iterator();
-			while (it.hasNext()) {
-				AbstractNode node = (AbstractNode) it.next();
-				if (uid.equals(node.getId())) {
-					return node;
-				}
+			return findNode((Object) identifier);
+		}
+
+		/**
+		 * @return The node (or cluster) added for the given key at any depth,
+		 *         the first one if the key was added in several places, or null
+		 *         if none; never registers the key
+		 */
+		public AbstractNode findNode(Object key) {
+			return registry.node(registry.existingOrdinal(key));
+		}
+
+		public AbstractNode findNodeById(long key) {
+			return registry.node(registry.existingOrdinal(key));
+		}
+
+		/**
+		 * @return The node (or cluster) of the given unique id, e.g. "c12", or
+		 *         null if none
+		 */
+		public AbstractNode findNodeByUniqueId(String uniqueId) {
+			return registry.node(registry.ordinalOf(uniqueId));
+		}
+
+		/**
+		 * @return The cluster added for the given key at any depth, or null if
+		 *         none
+		 */
+		public Cluster findCluster(Object key) {
+			final AbstractNode node = findNode(key);
+			return node instanceof Cluster ? (Cluster) node : null;
+		}
+
+		/**
+		 * @return The digraph or cluster containing the node added for the
+		 *         given key, or null if there is no such node
+		 */
+		public AbstractNode parentOf(Object key) {
+			final AbstractNode node = findNode(key);
+			return node == null ? null : node.getParent();
+		}
+
+		/**
+		 * @return The number of associations from the given node key, wherever
+		 *         they were added
+		 */
+		public int outDegree(Object key) {
+			final int ordinal = registry.existingOrdinal(key);
+			if (registry.columns != null) {
+				return registry.columns.outDegree(ordinal);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.outDegree(ordinal);
+			}
+			synchronized (index) {
+				return index.outDegree(ordinal);
 			}
+		}
 
-			return null;
+		/**
+		 * @return The number of associations to the given node key, wherever
+		 *         they were added
+		 */
+		public int inDegree(Object key) {
+			final int ordinal = registry.existingOrdinal(key);
+			if (registry.columns != null) {
+				return registry.columns.inDegree(ordinal);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.inDegree(ordinal);
+			}
+			synchronized (index) {
+				return index.inDegree(ordinal);
+			}
+		}
+
+		/**
+		 * @return The associations from the given node key, in the order they
+		 *         were added
+		 */
+		public List<Association> associationsFrom(Object key) {
+			final int ordinal = registry.existingOrdinal(key);
+			if (registry.columns != null) {
+				return registry.columns.associationsFrom(ordinal);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.from(ordinal);
+			}
+			synchronized (index) {
+				return index.from(ordinal);
+			}
+		}
+
+		/**
+		 * @return The associations to the given node key, in the order they were
+		 *         added
+		 */
+		public List<Association> associationsTo(Object key) {
+			final int ordinal = registry.existingOrdinal(key);
+			if (registry.columns != null) {
+				return registry.columns.associationsTo(ordinal);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.to(ordinal);
+			}
+			synchronized (index) {
+				return index.to(ordinal);
+			}
+		}
+
+		/**
+		 * @return The first association between the given node keys with the
+		 *         given label (possibly null), or null if none
+		 */
+		public Association findAssociation(Object sourceKey, Object targetKey, String label) {
+			final int source = registry.existingOrdinal(sourceKey);
+			final int target = registry.existingOrdinal(targetKey);
+			if (source == -1 || target == -1) {
+				return null;
+			}
+			if (registry.columns != null) {
+				final int row = registry.columns.findAssociation(source, target, label);
+				return row == -1 ? null : registry.columns.associationView(row);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.find(source, target, label);
+			}
+			synchronized (index) {
+				return index.find(source, target, label);
+			}
+		}
+
+		/**
+		 * @return true if there is any association between the given node keys
+		 */
+		public boolean hasAssociation(Object sourceKey, Object targetKey) {
+			final int source = registry.existingOrdinal(sourceKey);
+			final int target = registry.existingOrdinal(targetKey);
+			if (source == -1 || target == -1) {
+				return false;
+			}
+			if (registry.columns != null) {
+				return registry.columns.hasAssociation(source, target);
+			}
+			final AssociationIndex index = registry.associationIndex();
+			if (!registry.isConcurrent()) {
+				return index.contains(source, target);
+			}
+			synchronized (index) {
+				return index.contains(source, target);
+			}
 		}
 	}
 
 	/**
 	 * Represents a Node in a dot diagram
 	 */
-	public static final class Cluster extends AbstractNode {
+	public static class Cluster extends AbstractNode {
 
-		public Cluster(NodeRegistry registry, String id) {
-			super(registry, id);
+		public Cluster(NodeRegistry registry, int ordinal) {
+			super(registry, ordinal);
 		}
 
-		public String render() {
-			final StringBuffer out = new StringBuffer();
+		protected void renderContent(Appendable out, RenderOptions renderOptions) throws IOException {
 			final List<String> cells = new ArrayList<String>();
+			final String label = getLabel();
 			if (label != null) {
 				cells.add(label);
 			}
-			cells.addAll(stereotypes);
+			cells.addAll(stereotypes());
 			final String content = DotRenderer.toLines(cells);
 
-			out.append(DotRenderer.openCluster(CLUSTER_PREFIX + id));
-			out.append(DotRenderer.cluster(content));
+			DotRenderer.openCluster(out, CLUSTER_PREFIX + getId(), renderOptions.isCompact());
+			DotRenderer.cluster(out, content, renderOptions.isCompact());
 
-			renderNodes(out);
-			renderAssociations(out);
+			renderNodes(out, renderOptions);
+			renderAssociations(out, renderOptions);
 
-			out.append(DotRenderer.closeCluster());
-			return out.toString();
+			DotRenderer.closeCluster(out, renderOptions.isCompact());
 		}
 
 		public String toString() {
-			return "Cluster " + id;
+			return "Cluster " + getId();
+		}
+
+	}
+
+	/**
+	 * A node of a columnar graph, only a view of its row in the columns
+	 */
+	static final class ColumnarNode extends Node {
+
+		private final int row;
+
+		ColumnarNode(NodeRegistry registry, int ordinal, int row) {
+			super(registry, ordinal);
+			this.row = row;
+		}
+
+		int row() {
+			return row;
+		}
+	}
+
+	/**
+	 * A cluster of a columnar graph, only a view of its row in the columns
+	 */
+	static final class ColumnarCluster extends Cluster {
+
+		private final int row;
+
+		ColumnarCluster(NodeRegistry registry, int ordinal, int row) {
+			super(registry, ordinal);
+			this.row = row;
 		}
 
+		int row() {
+			return row;
+		}
 	}
 
 	/**
@@ -398,9 +1492,11 @@ public final class DotGraph implements Renderable {
 	 * @author cyrille martraire
 	 */
 	public static abstract class AbstractAssociation implements Renderable {
-		protected final String sourceId;
+		protected final NodeRegistry registry;
+
+		protected final int source;
 
-		protected final String targetId;
+		protected final int target;
 
 		protected String label;
 
@@ -408,9 +1504,39 @@ public final class DotGraph implements Renderable {
 
 		protected String options;
 
+		protected AbstractNode owner;
+
+		public AbstractAssociation(NodeRegistry registry, int source, int target) {
+			this.registry = registry;
+			this.source = source;
+			this.target = target;
+		}
+
+		/**
+		 * @deprecated the ids are no longer kept, but given by getSourceId()
+		 *             and getTargetId() from the ordinals resolved through the
+		 *             registry
+		 */
+		@Deprecated
+		public AbstractAssociation(NodeRegistry registry, String sourceId, String targetId) {
+			this(registry, resolve(registry, sourceId), resolve(registry, targetId));
+		}
+
+		/**
+		 * @deprecated without registry, the ids must be unique ids of a
+		 *             registry that is not concurrent, such as c0, c1...
+		 */
+		@Deprecated
 		public AbstractAssociation(String sourceId, final String targetId) {
-			this.sourceId = sourceId;
-			this.targetId = targetId;
+			this(null, sourceId, targetId);
+		}
+
+		private static int resolve(NodeRegistry registry, String uniqueId) {
+			final int ordinal = registry == null ? displayOf(uniqueId) : registry.ordinalOf(uniqueId);
+			if (ordinal == -1) {
+				throw new IllegalArgumentException("Not the unique id of a node: " + uniqueId);
+			}
+			return ordinal;
 		}
 
 		public String getLabel() {
@@ -420,6 +1546,7 @@ public final class DotGraph implements Renderable {
 		public AbstractAssociation setLabel(String label) {
 			if (label != null && label.length() > 0) {
 				this.label = label;
+				invalidateOwner();
 			}
 			return this;
 		}
@@ -430,6 +1557,7 @@ public final class DotGraph implements Renderable {
 
 		public AbstractAssociation setComment(String comment) {
 			this.comment = comment;
+			invalidateOwner();
 			return this;
 		}
 
@@ -439,13 +1567,30 @@ public final class DotGraph implements Renderable {
 
 		public AbstractAssociation setOptions(String options) {
 			this.options = options;
+			invalidateOwner();
 			return this;
 		}
 
+		private void invalidateOwner() {
+			if (owner != null) {
+				owner.invalidate();
+			}
+		}
+
+		public String getSourceId() {
+			return registry == null ? NODE_ID_PREFIX + source : registry.uniqueId(source);
+		}
+
 		public String getTargetId() {
-			return targetId;
+			return registry == null ? NODE_ID_PREFIX + target : registry.uniqueId(target);
+		}
+
+		public String render() {
+			return DotRenderer.toString(this::render);
 		}
 
+		public abstract void render(Appendable out) throws IOException;
+
 		/**
 		 * @return true if this Association is equal to the given Association
 		 */
@@ -457,13 +1602,53 @@ public final class DotGraph implements Renderable {
 			if (this == other) {
 				return true;
 			}
-			return other.sourceId.equals(sourceId) && other.targetId.equals(targetId) && other.label.equals(label);
+			final String label = getLabel();
+			return other.source == source && other.target == target
+					&& (label == null ? other.getLabel() == null : label.equals(other.getLabel()));
 		}
 
 		public int hashCode() {
-			return sourceId.hashCode() ^ targetId.hashCode();
+			final String label = getLabel();
+			return 31 * (31 * source + target) + (label == null ? 0 : label.hashCode());
+		}
+
+	}
+
+	/**
+	 * Orders associations by their displayed source and target ids, then by
+	 * their label, comment and options
+	 */
+	static final class AssociationOrder implements Comparator<AbstractAssociation> {
+
+		private final NodeRegistry registry;
+
+		AssociationOrder(NodeRegistry registry) {
+			this.registry = registry;
+		}
+
+		public int compare(AbstractAssociation a1, AbstractAssociation a2) {
+			int diff = Integer.compare(registry.displayOrdinal(a1.source), registry.displayOrdinal(a2.source));
+			if (diff == 0) {
+				diff = Integer.compare(registry.displayOrdinal(a1.target), registry.displayOrdinal(a2.target));
+			}
+			if (diff == 0) {
+				diff = compare(a1.label, a2.label);
+			}
+			if (diff == 0) {
+				diff = compare(a1.comment, a2.comment);
+			}
+			if (diff == 0) {
+				diff = compare(a1.options, a2.options);
+			}
+			return diff;
 		}
 
+		private static int compare(String s1, String s2) {
+			if (s1 == null || s2 == null) {
+				return s1 == s2 ? 0 : s1 == null ? -1 : 1;
+			}
+			return s1.compareTo(s2);
+		}
 	}
 
 	/**
@@ -471,19 +1656,81 @@ public final class DotGraph implements Renderable {
 	 */
 	public static class Association extends AbstractAssociation {
 
+		public Association(NodeRegistry registry, int source, int target) {
+			super(registry, source, target);
+		}
+
+		/**
+		 * @deprecated use addAssociation() of a digraph or cluster
+		 */
+		@Deprecated
 		public Association(String sourceId, String targetId) {
 			super(sourceId, targetId);
 		}
 
-		public String render() {
-			final StringBuffer out = new StringBuffer();
-			final String displayLabel = label == null ? null : "label=\"" + label + "\"";
-			out.append(DotRenderer.edge(sourceId, targetId, comment, displayLabel, options));
-			return out.toString();
+		public void render(Appendable out) throws IOException {
+			render(out, false, true);
+		}
+
+		/**
+		 * @param withOptions
+		 *            false when rendered within the group of its style
+		 */
+		void render(Appendable out, boolean compact, boolean withOptions) throws IOException {
+			DotRenderer.edge(out, getSourceId(), getTargetId(), getComment(), displayLabel(),
+					withOptions ? getOptions() : null, compact);
+		}
+
+		private String displayLabel() {
+			final String label = getLabel();
+			return label == null ? null : "label=\"" + DotEscaper.escapeQuoted(label) + "\"";
 		}
 
 		public String toString() {
-			return "Association from " + sourceId + " to " + targetId;
+			return "Association from " + getSourceId() + " to " + getTargetId();
+		}
+	}
+
+	/**
+	 * An association of a columnar graph, only a view of its row in the
+	 * columns
+	 */
+	static final class ColumnarAssociation extends Association {
+
+		private final int row;
+
+		ColumnarAssociation(NodeRegistry registry, int source, int target, int row) {
+			super(registry, source, target);
+			this.row = row;
+		}
+
+		public String getLabel() {
+			return registry.columns.getAssociationLabel(row);
+		}
+
+		public AbstractAssociation setLabel(String label) {
+			if (label != null && label.length() > 0) {
+				registry.columns.setAssociationLabel(row, label);
+			}
+			return this;
+		}
+
+		public String getComment() {
+			return registry.columns.getAssociationComment(row);
+		}
+
+		public AbstractAssociation setComment(String comment) {
+			registry.columns.setAssociationComment(row, comment);
+			return this;
+		}
+
+		public String getOptions() {
+			return registry.columns.getAssociationOptions(row);
+		}
+
+		public AbstractAssociation setOptions(String options) {
+			registry.columns.setAssociationOptions(row, options);
+			return this;
 		}
 	}
 
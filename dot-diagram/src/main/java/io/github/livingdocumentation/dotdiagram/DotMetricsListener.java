@@ -0,0 +1,57 @@
+package io.github.livingdocumentation.dotdiagram;
+
+/**
+ * Listens to the stages of the rendering of each diagram, to see where the
+ * time goes; every method does nothing by default, and the stages only
+ * measure anything when a listener other than {@link #NONE} is set.
+ * 
+ * The methods may be called concurrently, from the threads rendering.
+ * 
+ * @see RenderOptions#withMetricsListener(DotMetricsListener)
+ * @see AbstractDotWriter#setMetricsListener(DotMetricsListener)
+ */
+public interface DotMetricsListener {
+
+	/**
+	 * The listener doing nothing, the default
+	 */
+	DotMetricsListener NONE = new DotMetricsListener() {
+		public String toString() {
+			return "DotMetricsListener NONE";
+		}
+	};
+
+	/**
+	 * A graph was rendered into the dot syntax
+	 */
+	default void graphRendered(String title, GraphStatistics statistics, long nanos) {
+	}
+
+	/**
+	 * A dot file was written, possibly streaming the rendering of its graph
+	 */
+	default void dotWritten(String filename, long bytes, long nanos) {
+	}
+
+	/**
+	 * An image was rendered from a dot file
+	 * 
+	 * @param spawnNanos
+	 *            The time to start the Graphviz process, 0 for a remote
+	 *            rendering
+	 * @param wallNanos
+	 *            The whole time of the rendering, from before the start of the
+	 *            process until its exit
+	 * @param status
+	 *            The exit status of the process (or the HTTP status of a
+	 *            remote rendering), -1 if it was destroyed before its exit
+	 */
+	default void imageRendered(String filename, long spawnNanos, long wallNanos, int status) {
+	}
+
+	/**
+	 * The image of a dot file was looked up in a cache
+	 */
+	default void cacheLookup(String filename, boolean hit) {
+	}
+}
@@ -1,10 +1,18 @@
 package io.github.livingdocumentation.dotdiagram;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
-import java.util.StringTokenizer;
 
 /**
  * Renders a graph with basic UML diagrams elements into the dot syntax
+ * 
+ * Every element can be rendered either as a String or directly into an
+ * Appendable sink (a StringBuilder, a Writer...), in which case no
+ * intermediate String is built.
+ * 
+ * Every element can also be rendered compact, for transport or hashing:
+ * without comments, indentation nor newlines, and with shorter defaults.
  */
 public class DotRenderer {
 
@@ -19,6 +27,27 @@ public class DotRenderer {
 	protected DotRenderer() {
 	}
 
+	/**
+	 * Something that writes itself into an Appendable sink
+	 */
+	public interface Emitter {
+		void emit(Appendable out) throws IOException;
+	}
+
+	/**
+	 * @return The text written by the given emitter
+	 */
+	public static String toString(Emitter emitter) {
+		final StringBuilder sb = new StringBuilder();
+		try {
+			emitter.emit(sb);
+		} catch (IOException e) {
+			// cannot happen with a StringBuilder
+			throw new DotDiagramException("Errors rendering into memory", e);
+		}
+		return sb.toString();
+	}
+
 	public static String fontname(String fontname) {
 		return "fontname=\"" + fontname + "\"";
 	}
@@ -31,6 +60,33 @@ public class DotRenderer {
 		return fontname(fontname) + "," + fontsize(fontsize);
 	}
 
+	public static void options(Appendable out, String fontname, int fontsize) throws IOException {
+		options(out, fontname, fontsize, false);
+	}
+
+	/**
+	 * In compact mode, the font name is not quoted when it is a plain
+	 * identifier
+	 */
+	public static void options(Appendable out, String fontname, int fontsize, boolean compact) throws IOException {
+		final boolean quoted = !compact || !isPlainId(fontname);
+		out.append(quoted ? "fontname=\"" : "fontname=").append(fontname);
+		out.append(quoted ? "\",fontsize=" : ",fontsize=").append(Integer.toString(fontsize));
+	}
+
+	private static boolean isPlainId(String id) {
+		if (id.isEmpty() || Character.isDigit(id.charAt(0))) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			final char c = id.charAt(i);
+			if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public static String options(boolean isAbstract) {
 		return fontname(isAbstract ? "Verdana-Italic" : "Verdana") + ", " + fontsize(9);
 	}
@@ -39,181 +95,337 @@ public class DotRenderer {
 		return OPEN_STEREOTYPE + str + CLOSE_STEREOTYPE;
 	}
 
-	public static String openGraph(String title, String dir) {
-		final StringBuffer sb = new StringBuffer();
-		sb.append("# Class diagram ");
-		sb.append(title);
-		sb.append(NEWLINE);
-		sb.append("digraph G {");
+	public static String openGraph(final String title, final String dir) {
+		return toString(out -> openGraph(out, title, dir));
+	}
 
-		if (title != null) {
-			sb.append(graphTitle(title, dir));
+	public static void openGraph(Appendable out, String title, String dir) throws IOException {
+		openGraph(out, title, dir, false);
+	}
+
+	public static void openGraph(Appendable out, String title, String dir, boolean compact) throws IOException {
+		if (compact) {
+			out.append("digraph G{");
+		} else {
+			out.append("# Class diagram ");
+			DotEscaper.escapeComment(out, title);
+			out.append(NEWLINE);
+			out.append("digraph G {");
 		}
-		sb.append(optionsEdge());
-		sb.append(optionsNode());
 
-		return sb.toString();
+		if (title != null) {
+			graphTitle(out, title, dir, compact);
+		}
+		optionsEdge(out, compact);
+		optionsNode(out, compact);
 	}
 
 	public static String closeGraph() {
 		return NEWLINE + "}" + NEWLINE;
 	}
 
+	public static void closeGraph(Appendable out) throws IOException {
+		closeGraph(out, false);
+	}
+
+	public static void closeGraph(Appendable out, boolean compact) throws IOException {
+		if (compact) {
+			out.append("}");
+		} else {
+			out.append(NEWLINE).append("}").append(NEWLINE);
+		}
+	}
+
 	public static String openCluster(String id) {
 		return NEWLINE + "subgraph " + id + " {";
 	}
 
+	public static void openCluster(Appendable out, String id) throws IOException {
+		openCluster(out, id, false);
+	}
+
+	public static void openCluster(Appendable out, String id, boolean compact) throws IOException {
+		if (compact) {
+			out.append("subgraph ").append(id).append("{");
+		} else {
+			out.append(NEWLINE).append("subgraph ").append(id).append(" {");
+		}
+	}
+
 	public static String cluster(String content) {
-		return NEWLINE + "label = \"" + content + "\";";
+		return NEWLINE + "label = \"" + DotEscaper.escapeQuoted(content) + "\";";
+	}
+
+	public static void cluster(Appendable out, String content) throws IOException {
+		cluster(out, content, false);
+	}
+
+	public static void cluster(Appendable out, String content, boolean compact) throws IOException {
+		if (compact) {
+			out.append("label=\"");
+		} else {
+			out.append(NEWLINE).append("label = \"");
+		}
+		DotEscaper.escapeQuoted(out, content);
+		out.append("\";");
 	}
 
 	public static String closeCluster() {
 		return NEWLINE + "}";
 	}
 
+	public static void closeCluster(Appendable out) throws IOException {
+		closeCluster(out, false);
+	}
+
+	public static void closeCluster(Appendable out, boolean compact) throws IOException {
+		if (!compact) {
+			out.append(NEWLINE);
+		}
+		out.append("}");
+	}
+
+	/**
+	 * @param element
+	 *            "node" or "edge"
+	 * @return The opening of an anonymous subgraph giving the given options
+	 *         to all its nodes or edges
+	 */
+	public static String openStyleClass(String element, String options) {
+		return toString(out -> openStyleClass(out, element, options));
+	}
+
+	public static void openStyleClass(Appendable out, String element, String options) throws IOException {
+		openStyleClass(out, element, options, false);
+	}
+
+	public static void openStyleClass(Appendable out, String element, String options, boolean compact)
+			throws IOException {
+		if (compact) {
+			out.append("{").append(element).append("[").append(options).append("];");
+			return;
+		}
+		out.append(NEWLINE).append(TAB).append("{");
+		out.append(NEWLINE).append(TAB).append(element).append(" [").append(options).append("];");
+	}
+
+	public static String closeStyleClass() {
+		return NEWLINE + TAB + "}";
+	}
+
+	public static void closeStyleClass(Appendable out) throws IOException {
+		closeStyleClass(out, false);
+	}
+
+	public static void closeStyleClass(Appendable out, boolean compact) throws IOException {
+		if (!compact) {
+			out.append(NEWLINE).append(TAB);
+		}
+		out.append("}");
+	}
+
 	public static String withDotNewLine(String s) {
-		return NEWLINE + "//" + s;
-	}
-
-	public static String graphTitle(String title, String dir) {
-		final StringBuffer sb = new StringBuffer();
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append("graph");
-		sb.append(" ");
-		sb.append("[");
-		sb.append("labelloc=top,label=\"");
-		sb.append(title);
-		sb.append("\"");
-		sb.append(",");
-		sb.append(options("Verdana", 12));
+		return NEWLINE + "//" + DotEscaper.escapeComment(s);
+	}
+
+	public static void withDotNewLine(Appendable out, String s) throws IOException {
+		out.append(NEWLINE).append("//");
+		DotEscaper.escapeComment(out, s);
+	}
+
+	public static String graphTitle(final String title, final String dir) {
+		return toString(out -> graphTitle(out, title, dir));
+	}
+
+	public static void graphTitle(Appendable out, String title, String dir) throws IOException {
+		graphTitle(out, title, dir, false);
+	}
+
+	public static void graphTitle(Appendable out, String title, String dir, boolean compact) throws IOException {
+		if (compact) {
+			out.append("graph[");
+		} else {
+			out.append(NEWLINE);
+			out.append(TAB);
+			out.append("graph");
+			out.append(" ");
+			out.append("[");
+		}
+		out.append("labelloc=top,label=\"");
+		DotEscaper.escapeQuoted(out, title);
+		out.append("\"");
+		out.append(",");
+		options(out, "Verdana", 12, compact);
 		if (dir != null) {
-			sb.append(",");
-			sb.append("rankdir=" + dir);
+			out.append(",");
+			out.append("rankdir=").append(dir);
 		}
-		sb.append("]");
-		sb.append(";");
-		return sb.toString();
+		out.append("]");
+		out.append(";");
 	}
 
 	public static String optionsNode() {
-		final StringBuffer sb = new StringBuffer();
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append("node");
-		sb.append(" ");
-		sb.append("[");
-		sb.append(options("Verdana", 9));
-
-		sb.append(",");
-		sb.append("shape=record");
-
-		sb.append("]");
-		sb.append(";");
-		return sb.toString();
+		return toString(out -> optionsNode(out));
+	}
+
+	public static void optionsNode(Appendable out) throws IOException {
+		optionsNode(out, false);
+	}
+
+	public static void optionsNode(Appendable out, boolean compact) throws IOException {
+		if (compact) {
+			out.append("node[");
+		} else {
+			out.append(NEWLINE);
+			out.append(TAB);
+			out.append("node");
+			out.append(" ");
+			out.append("[");
+		}
+		options(out, "Verdana", 9, compact);
+
+		out.append(",");
+		out.append("shape=record");
+
+		out.append("]");
+		out.append(";");
 	}
 
 	public static String optionsEdge() {
-		final StringBuffer sb = new StringBuffer();
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append("edge");
-		sb.append(" ");
-		sb.append("[");
-		sb.append(options("Verdana", 9));
-
-		sb.append(",");
-		sb.append("labelfontname=\"");
-		sb.append("Verdana");
-		sb.append("\",labelfontsize=");
-		sb.append(9);
-
-		sb.append("]");
-		sb.append(";");
-		return sb.toString();
+		return toString(out -> optionsEdge(out));
+	}
+
+	public static void optionsEdge(Appendable out) throws IOException {
+		optionsEdge(out, false);
+	}
+
+	/**
+	 * In compact mode, the font of the edge labels is not repeated, as it
+	 * defaults to the font of the edges
+	 */
+	public static void optionsEdge(Appendable out, boolean compact) throws IOException {
+		if (compact) {
+			out.append("edge[");
+			options(out, "Verdana", 9, true);
+			out.append("];");
+			return;
+		}
+		out.append(NEWLINE);
+		out.append(TAB);
+		out.append("edge");
+		out.append(" ");
+		out.append("[");
+		options(out, "Verdana", 9);
+
+		out.append(",");
+		out.append("labelfontname=\"");
+		out.append("Verdana");
+		out.append("\",labelfontsize=");
+		out.append("9");
+
+		out.append("]");
+		out.append(";");
 	}
 
-	public static String edge(String uniqueNameFrom, String uniqueNameTo, String comment, String labels,
-			String edgeStyle) {
+	public static String edge(final String uniqueNameFrom, final String uniqueNameTo, final String comment,
+			final String labels, final String edgeStyle) {
+		return toString(out -> edge(out, uniqueNameFrom, uniqueNameTo, comment, labels, edgeStyle));
+	}
+
+	public static void edge(Appendable out, String uniqueNameFrom, String uniqueNameTo, String comment,
+			String labels, String edgeStyle) throws IOException {
+		edge(out, uniqueNameFrom, uniqueNameTo, comment, labels, edgeStyle, false);
+	}
+
+	/**
+	 * In compact mode, the comment is not rendered
+	 */
+	public static void edge(Appendable out, String uniqueNameFrom, String uniqueNameTo, String comment,
+			String labels, String edgeStyle, boolean compact) throws IOException {
 		if (uniqueNameFrom == null || uniqueNameTo == null) {
-			return "";
+			return;
+		}
+		if (compact) {
+			out.append(uniqueNameFrom).append("->").append(uniqueNameTo).append("[");
+			if (labels != null) {
+				out.append(labels);
+				if (edgeStyle != null) {
+					out.append(",");
+				}
+			}
+			if (edgeStyle != null) {
+				out.append(edgeStyle);
+			}
+			out.append("];");
+			return;
 		}
-		final StringBuffer sb = new StringBuffer();
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append("// ");
-		sb.append(comment);
-
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append(uniqueNameFrom);
-		sb.append(" -> ");
-		sb.append(uniqueNameTo);
-		sb.append(" [");
+		out.append(NEWLINE);
+		out.append(TAB);
+		out.append("// ");
+		DotEscaper.escapeComment(out, comment);
+
+		out.append(NEWLINE);
+		out.append(TAB);
+		out.append(uniqueNameFrom);
+		out.append(" -> ");
+		out.append(uniqueNameTo);
+		out.append(" [");
 		if (labels != null) {
-			sb.append(labels);
-			sb.append("  ");
-			sb.append(", ");
+			out.append(labels);
+			out.append("  ");
+			out.append(", ");
 		}
 		if (edgeStyle != null) {
-			sb.append(edgeStyle);
+			out.append(edgeStyle);
 		}
-		sb.append("];");
-
-		return sb.toString();
+		out.append("];");
 	}
 
 	public static String toLines(final List<String> cells) {
-		return toLines((String[]) cells.toArray(new String[cells.size()]), "\\n ", "");
-	}
-
-	private static String toLines(String[] cells, String prefix, String postfix) {
-		if (cells == null || cells.length == 0) {
+		if (cells == null || cells.isEmpty()) {
 			return "";
 		}
-		final StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < cells.length; i++) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < cells.size(); i++) {
 			if (i > 0) {
-				sb.append(prefix);
+				sb.append("\\n ");
 			}
-			sb.append(cells[i]);
-			sb.append(postfix);
+			sb.append(cells.get(i));
 		}
 		return sb.toString();
 	}
 
 	public static String wrapText(String text, int length) {
-		final StringBuffer sb = new StringBuffer();
-		StringTokenizer st = new StringTokenizer(text, " \t\n", true);
-		int lineLength = 0;
-		while (st.hasMoreElements()) {
-			String token = st.nextToken();
-			if (lineLength > length) {
-				lineLength = 0;
-				sb.append("\\l");
-			}
-			sb.append(token);
-			lineLength += token.length();
-		}
-		return sb.toString();
+		return LabelFormatter.wrap(text, Collections.<String> emptyList(), length);
 	}
 
-	public static String node(String uniqueName, final String label, String options) {
-		final StringBuffer sb = new StringBuffer();
-		sb.append(NEWLINE);
-		sb.append(TAB);
-		sb.append(uniqueName);
-		sb.append(" ");
-		sb.append("[");
-		sb.append("label=\"");
-		sb.append(label);
-		sb.append("\"");
+	public static String node(final String uniqueName, final String label, final String options) {
+		return toString(out -> node(out, uniqueName, label, options));
+	}
+
+	public static void node(Appendable out, String uniqueName, String label, String options) throws IOException {
+		node(out, uniqueName, label, options, false);
+	}
+
+	public static void node(Appendable out, String uniqueName, String label, String options, boolean compact)
+			throws IOException {
+		if (compact) {
+			out.append(uniqueName);
+		} else {
+			out.append(NEWLINE);
+			out.append(TAB);
+			out.append(uniqueName);
+			out.append(" ");
+		}
+		out.append("[");
+		out.append("label=\"");
+		DotEscaper.escapeRecord(out, label);
+		out.append("\"");
 		if (options != null) {
-			sb.append(", ");
-			sb.append(options);
+			out.append(compact ? "," : ", ");
+			out.append(options);
 		}
-		sb.append("]");
-		return sb.toString();
+		out.append("]");
 	}
 
 }
@@ -0,0 +1,201 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Selects the Graphviz layout engine and its flags from the statistics of a
+ * graph, since the layout time of dot grows superlinearly: the first rule
+ * matching the statistics wins, otherwise the default engine. Optionally, a
+ * layout running beyond a time budget is killed and run again with a faster
+ * fallback engine.
+ * 
+ * Immutable, every <code>when...</code> or <code>with...</code> method returns
+ * a modified copy.
+ */
+public final class EngineSelector {
+
+	public static final Engine DOT = Engine.of("dot");
+
+	public static final Engine FDP = Engine.of("fdp", "-Goverlap=prism");
+
+	public static final Engine SFDP = Engine.of("sfdp", "-Goverlap=prism", "-Gsplines=false");
+
+	/**
+	 * The default limits of the graphs laid out by dot
+	 */
+	public static final int DEFAULT_MAX_DOT_NODES = 2000;
+
+	public static final int DEFAULT_MAX_DOT_EDGES = 5000;
+
+	/**
+	 * The default limit of the clustered graphs laid out by fdp, which
+	 * supports the clusters unlike sfdp
+	 */
+	public static final int DEFAULT_MAX_FDP_NODES = 10000;
+
+	private static final EngineSelector DEFAULTS = of(SFDP).when(
+			s -> s.getClusterDepth() > 0 && s.getNodeCount() <= DEFAULT_MAX_FDP_NODES, FDP).when(
+			DEFAULT_MAX_DOT_NODES, DEFAULT_MAX_DOT_EDGES, DOT);
+
+	private final List<Rule> rules;
+
+	private final Engine otherwise;
+
+	private final long timeBudgetMillis;
+
+	private final Engine fallback;
+
+	private EngineSelector(List<Rule> rules, Engine otherwise, long timeBudgetMillis, Engine fallback) {
+		this.rules = rules;
+		this.otherwise = otherwise;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.fallback = fallback;
+	}
+
+	/**
+	 * @return dot for the graphs up to 2000 nodes and 5000 edges, fdp for the
+	 *         clustered graphs up to 10000 nodes, sfdp otherwise; no fallback
+	 */
+	public static EngineSelector defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * @return A selector of the given engine for any graph, until rules are
+	 *         added
+	 */
+	public static EngineSelector of(Engine otherwise) {
+		return new EngineSelector(Collections.<Rule> emptyList(), otherwise, 0, null);
+	}
+
+	/**
+	 * @return A copy selecting the given engine for the graphs within the
+	 *         given limits, before the rules so far
+	 */
+	public EngineSelector when(final int maxNodes, final int maxEdges, Engine engine) {
+		return when(s -> s.getNodeCount() <= maxNodes && s.getEdgeCount() <= maxEdges, engine);
+	}
+
+	/**
+	 * @return A copy selecting the given engine for the graphs matching the
+	 *         given condition, before the rules so far
+	 */
+	public EngineSelector when(Predicate<GraphStatistics> condition, Engine engine) {
+		final List<Rule> copy = new ArrayList<Rule>(rules.size() + 1);
+		copy.add(new Rule(condition, engine));
+		copy.addAll(rules);
+		return new EngineSelector(copy, otherwise, timeBudgetMillis, fallback);
+	}
+
+	/**
+	 * @return A copy running the given fallback engine whenever the selected
+	 *         one takes longer than the given time budget
+	 */
+	public EngineSelector withFallback(long timeBudget, TimeUnit unit, Engine fallback) {
+		if (timeBudget < 1) {
+			throw new IllegalArgumentException("The time budget must be positive: " + timeBudget);
+		}
+		return new EngineSelector(rules, otherwise, unit.toMillis(timeBudget), fallback);
+	}
+
+	public Engine select(GraphStatistics statistics) {
+		for (Rule rule : rules) {
+			if (rule.condition.test(statistics)) {
+				return rule.engine;
+			}
+		}
+		return otherwise;
+	}
+
+	/**
+	 * @return The time budget of the selected engine in milliseconds, 0 for
+	 *         none
+	 */
+	public long getTimeBudgetMillis() {
+		return timeBudgetMillis;
+	}
+
+	/**
+	 * @return The fallback engine, or null for none
+	 */
+	public Engine getFallback() {
+		return fallback;
+	}
+
+	public String toString() {
+		return "EngineSelector rules=" + rules.size() + " otherwise=" + otherwise + " timeBudgetMillis="
+				+ timeBudgetMillis + " fallback=" + fallback;
+	}
+
+	private static final class Rule {
+
+		private final Predicate<GraphStatistics> condition;
+
+		private final Engine engine;
+
+		Rule(Predicate<GraphStatistics> condition, Engine engine) {
+			this.condition = condition;
+			this.engine = engine;
+		}
+	}
+
+	/**
+	 * A Graphviz layout engine, the name of its executable, with its flags
+	 */
+	public static final class Engine {
+
+		private final String name;
+
+		private final List<String> flags;
+
+		private Engine(String name, List<String> flags) {
+			this.name = name;
+			this.flags = flags;
+		}
+
+		public static Engine of(String name, String... flags) {
+			return new Engine(name, Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(flags))));
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public List<String> getFlags() {
+			return flags;
+		}
+
+		/**
+		 * @return The name and the flags, separated by spaces, for a command
+		 *         line
+		 */
+		public String toCommand() {
+			final StringBuilder command = new StringBuilder(name);
+			for (String flag : flags) {
+				command.append(' ').append(flag);
+			}
+			return command.toString();
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Engine)) {
+				return false;
+			}
+			final Engine other = (Engine) o;
+			return name.equals(other.name) && flags.equals(other.flags);
+		}
+
+		public int hashCode() {
+			return name.hashCode() * 31 + flags.hashCode();
+		}
+
+		public String toString() {
+			return toCommand();
+		}
+	}
+}
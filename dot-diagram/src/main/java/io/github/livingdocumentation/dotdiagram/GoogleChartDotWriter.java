@@ -32,14 +32,36 @@ public class GoogleChartDotWriter extends AbstractDotWriter {
 
     @Override
     public void render(String filename) throws InterruptedException, IOException {
-        String dot = read(path + filename + ".dot");
+        send(read(path + filename + ".dot"), filename);
+    }
+
+    /**
+     * Renders the content once, compact, into the dot file and sends that
+     * same text, without reading the file back
+     */
+    @Override
+    public String toImage(String filename, Renderable content) throws InterruptedException, IOException {
+        send(writeCompact(filename, content), filename);
+        return filename + getImageExtension();
+    }
+
+    private void send(String dot, String filename) throws IOException {
+        final DotMetricsListener listener = getMetricsListener();
+        final long start = listener == DotMetricsListener.NONE ? 0 : System.nanoTime();
         HttpRequest httpRequest = HttpRequest.get(GOOGLE_CHART_API, true, "cht", "gv", "chl", dot);
-        if (httpRequest.ok()) {
-            try (InputStream is = httpRequest.stream()) {
-                Files.copy(is, Paths.get(path + filename + getImageExtension()));
+        final boolean ok = httpRequest.ok();
+        try {
+            if (ok) {
+                try (InputStream is = httpRequest.stream()) {
+                    Files.copy(is, Paths.get(path + filename + getImageExtension()));
+                }
+            } else {
+                throw new DotDiagramException("Errors calling Graphviz chart.googleapis.com");
+            }
+        } finally {
+            if (listener != DotMetricsListener.NONE) {
+                listener.imageRendered(filename, 0, System.nanoTime() - start, httpRequest.code());
             }
-        } else {
-            throw new DotDiagramException("Errors calling Graphviz chart.googleapis.com");
         }
     }
 
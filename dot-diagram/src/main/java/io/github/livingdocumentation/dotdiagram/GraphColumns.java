@@ -0,0 +1,701 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
+import io.github.livingdocumentation.dotdiagram.DotGraph.ColumnarAssociation;
+import io.github.livingdocumentation.dotdiagram.DotGraph.ColumnarCluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.ColumnarNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.NodeRegistry;
+
+/**
+ * The storage of a columnar DotGraph, for graphs of millions of nodes: there
+ * is no object per node or per association, they are rows in primitive
+ * columns (ordinal, parent row, kind, and indices of interned label, comment
+ * and options strings), the nodes, clusters and associations of the API being
+ * only transient views of their rows. The queries on associations go through
+ * compact arrays of the association rows grouped by source and by target,
+ * built on the first query after associations were added.
+ *
+ * For graphs larger than the heap, the strings and associations are kept on
+ * the heap up to a threshold, then in memory-mapped temporary files, deleted
+ * on close.
+ */
+final class GraphColumns {
+
+	/**
+	 * The row standing for the digraph itself
+	 */
+	static final int ROOT = -1;
+
+	private static final int NONE = -1;
+
+	private static final byte NODE = 0;
+
+	private static final byte CLUSTER = 1;
+
+	private static final String CLUSTER_PREFIX = "cluster_";
+
+	private static final String STEREOTYPE_SEPARATOR = "\\n ";
+
+	private final NodeRegistry registry;
+
+	private final StringPool strings;
+
+	/**
+	 * The digraph of the graph, the view of the ROOT row
+	 */
+	Digraph root;
+
+	// node columns, one row per node added
+
+	private int nodeCount = 0;
+
+	private int[] nodeOrdinals = new int[16];
+
+	private int[] nodeParents = new int[16];
+
+	private byte[] nodeKinds = new byte[16];
+
+	private int[] nodeLabels = new int[16];
+
+	private int[] nodeComments = new int[16];
+
+	private int[] nodeOptions = new int[16];
+
+	private int[] nodeStereotypes = new int[16];
+
+	// the rows of a same ordinal (added in several parents) are chained, the
+	// latest first
+
+	private int[] firstRows = new int[16];
+
+	private int[] nextRows = new int[16];
+
+	// the associations of each owner row are chained in the order they were
+	// added, the ROOT chain being at index 0, the chain of row r at r + 1
+
+	private int[] firstAssociations = new int[17];
+
+	private int[] lastAssociations = new int[17];
+
+	// association columns, one row per association added
+
+	private static final int SOURCE = 0;
+
+	private static final int TARGET = 1;
+
+	private static final int LABEL = 2;
+
+	private static final int COMMENT = 3;
+
+	private static final int OPTIONS = 4;
+
+	private static final int NEXT = 5;
+
+	private final IntTable associations;
+
+	private final SpillStore spill;
+
+	private Layout layout;
+
+	private EdgeIndex edgeIndex;
+
+	// the weights of the rows, as of the given counts of nodes and associations
+
+	private int[] weights;
+
+	private int weightsNodeCount = -1;
+
+	private int weightsAssociationCount = -1;
+
+	/**
+	 * @param spill
+	 *            The budget of heap bytes before spilling, or null to keep
+	 *            everything on the heap
+	 */
+	GraphColumns(NodeRegistry registry, SpillStore spill) {
+		this.registry = registry;
+		this.spill = spill;
+		this.strings = spill == null ? new StringPool() : new SpillingStringPool(spill);
+		this.associations = spill == null ? new IntTable(NEXT + 1) : new SpillingIntTable(NEXT + 1, spill);
+		Arrays.fill(firstRows, NONE);
+		firstAssociations[0] = NONE;
+		lastAssociations[0] = NONE;
+	}
+
+	/**
+	 * @return The number of bytes spilled to memory-mapped files so far
+	 */
+	public long spilledBytes() {
+		return spill == null ? 0 : spill.spilledBytes();
+	}
+
+	/**
+	 * Deletes the spill files, if any; the columns cannot be used afterwards
+	 */
+	public void close() throws IOException {
+		if (spill != null) {
+			spill.close();
+		}
+	}
+
+	/**
+	 * @return The row of the node of the given ordinal in the given parent
+	 *         row (or ROOT), added if not already there
+	 */
+	public int addNode(int parent, int ordinal) {
+		return row(parent, ordinal, NODE);
+	}
+
+	public int addCluster(int parent, int ordinal) {
+		return row(parent, ordinal, CLUSTER);
+	}
+
+	private int row(int parent, int ordinal, byte kind) {
+		if (ordinal >= firstRows.length) {
+			final int length = firstRows.length;
+			firstRows = Arrays.copyOf(firstRows, Math.max(ordinal + 1, length + (length >> 1)));
+			Arrays.fill(firstRows, length, firstRows.length, NONE);
+		}
+		for (int existing = firstRows[ordinal]; existing != NONE; existing = nextRows[existing]) {
+			if (nodeParents[existing] == parent) {
+				if (nodeKinds[existing] != kind) {
+					throw new DotDiagramException("Node " + registry.uniqueId(ordinal) + " is already added as a "
+							+ (nodeKinds[existing] == CLUSTER ? "cluster" : "node"));
+				}
+				return existing;
+			}
+		}
+		if (nodeCount == nodeOrdinals.length) {
+			final int capacity = nodeCount + (nodeCount >> 1);
+			nodeOrdinals = Arrays.copyOf(nodeOrdinals, capacity);
+			nodeParents = Arrays.copyOf(nodeParents, capacity);
+			nodeKinds = Arrays.copyOf(nodeKinds, capacity);
+			nodeLabels = Arrays.copyOf(nodeLabels, capacity);
+			nodeComments = Arrays.copyOf(nodeComments, capacity);
+			nodeOptions = Arrays.copyOf(nodeOptions, capacity);
+			nodeStereotypes = Arrays.copyOf(nodeStereotypes, capacity);
+			nextRows = Arrays.copyOf(nextRows, capacity);
+			firstAssociations = Arrays.copyOf(firstAssociations, capacity + 1);
+			lastAssociations = Arrays.copyOf(lastAssociations, capacity + 1);
+		}
+		final int row = nodeCount++;
+		nodeOrdinals[row] = ordinal;
+		nodeParents[row] = parent;
+		nodeKinds[row] = kind;
+		nodeLabels[row] = NONE;
+		nodeComments[row] = NONE;
+		nodeOptions[row] = NONE;
+		nodeStereotypes[row] = NONE;
+		nextRows[row] = firstRows[ordinal];
+		firstRows[ordinal] = row;
+		firstAssociations[row + 1] = NONE;
+		lastAssociations[row + 1] = NONE;
+		return row;
+	}
+
+	/**
+	 * @return A new view of the given node row, or the digraph for ROOT
+	 */
+	public AbstractNode view(int row) {
+		if (row == ROOT) {
+			return root;
+		}
+		if (nodeKinds[row] == CLUSTER) {
+			return new ColumnarCluster(registry, nodeOrdinals[row], row);
+		}
+		return new ColumnarNode(registry, nodeOrdinals[row], row);
+	}
+
+	public AbstractNode parentView(int row) {
+		return view(nodeParents[row]);
+	}
+
+	/**
+	 * @return A view of the first node row added for the given ordinal, or
+	 *         null if none
+	 */
+	public AbstractNode firstNode(int ordinal) {
+		if (ordinal < 0 || ordinal >= firstRows.length || firstRows[ordinal] == NONE) {
+			return null;
+		}
+		int row = firstRows[ordinal];
+		while (nextRows[row] != NONE) {
+			row = nextRows[row];
+		}
+		return view(row);
+	}
+
+	public String getLabel(int row) {
+		return strings.get(nodeLabels[row]);
+	}
+
+	public void setLabel(int row, String label) {
+		nodeLabels[row] = strings.intern(label);
+	}
+
+	public String getComment(int row) {
+		return strings.get(nodeComments[row]);
+	}
+
+	public void setComment(int row, String comment) {
+		nodeComments[row] = strings.intern(comment);
+	}
+
+	public String getOptions(int row) {
+		return strings.get(nodeOptions[row]);
+	}
+
+	public void setOptions(int row, String options) {
+		nodeOptions[row] = strings.intern(options);
+	}
+
+	/**
+	 * Adds the given stereotype, unless already there; the stereotypes of a
+	 * row are interned as a single string, in the order they were first added
+	 */
+	public void addStereotype(int row, String stereotype) {
+		final String formatted = DotRenderer.stereotype(stereotype);
+		final String existing = strings.get(nodeStereotypes[row]);
+		if (existing == null) {
+			nodeStereotypes[row] = strings.intern(formatted);
+		} else if (!(STEREOTYPE_SEPARATOR + existing + STEREOTYPE_SEPARATOR)
+				.contains(STEREOTYPE_SEPARATOR + formatted + STEREOTYPE_SEPARATOR)) {
+			nodeStereotypes[row] = strings.intern(existing + STEREOTYPE_SEPARATOR + formatted);
+		}
+	}
+
+	/**
+	 * @return The formatted stereotypes of the given row, read-only
+	 */
+	public List<String> stereotypes(int row) {
+		final String joined = strings.get(nodeStereotypes[row]);
+		if (joined == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(joined.split(Pattern.quote(STEREOTYPE_SEPARATOR))));
+	}
+
+	/**
+	 * @return The row of the association added to the given owner row (or
+	 *         ROOT)
+	 */
+	public int addAssociation(int owner, int source, int target) {
+		final int row = associations.addRow();
+		associations.set(row, SOURCE, source);
+		associations.set(row, TARGET, target);
+		associations.set(row, LABEL, NONE);
+		associations.set(row, COMMENT, NONE);
+		associations.set(row, OPTIONS, NONE);
+		associations.set(row, NEXT, NONE);
+		final int last = lastAssociations[owner + 1];
+		if (last == NONE) {
+			firstAssociations[owner + 1] = row;
+		} else {
+			associations.set(last, NEXT, row);
+		}
+		lastAssociations[owner + 1] = row;
+		return row;
+	}
+
+	/**
+	 * @return A new view of the given association row
+	 */
+	public Association associationView(int association) {
+		return new ColumnarAssociation(registry, associations.get(association, SOURCE), associations.get(
+				association, TARGET), association);
+	}
+
+	public String getAssociationLabel(int association) {
+		return strings.get(associations.get(association, LABEL));
+	}
+
+	public void setAssociationLabel(int association, String label) {
+		associations.set(association, LABEL, strings.intern(label));
+	}
+
+	public String getAssociationComment(int association) {
+		return strings.get(associations.get(association, COMMENT));
+	}
+
+	public void setAssociationComment(int association, String comment) {
+		associations.set(association, COMMENT, strings.intern(comment));
+	}
+
+	public String getAssociationOptions(int association) {
+		return strings.get(associations.get(association, OPTIONS));
+	}
+
+	public void setAssociationOptions(int association, String options) {
+		associations.set(association, OPTIONS, strings.intern(options));
+	}
+
+	/**
+	 * @return Views of the associations added to the given owner row, in the
+	 *         order they were added
+	 */
+	public List<Association> associations(int owner) {
+		final List<Association> views = new ArrayList<Association>();
+		for (int row = firstAssociations[owner + 1]; row != NONE; row = associations.get(row, NEXT)) {
+			views.add(associationView(row));
+		}
+		return views;
+	}
+
+	public int associationCount(int owner) {
+		int count = 0;
+		for (int row = firstAssociations[owner + 1]; row != NONE; row = associations.get(row, NEXT)) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return The size of the group of the given ordinal in the given starts
+	 *         of an EdgeIndex
+	 */
+	private static int degree(int[] starts, int ordinal) {
+		return ordinal >= 0 && ordinal < starts.length - 1 ? starts[ordinal + 1] - starts[ordinal] : 0;
+	}
+
+	public int outDegree(int ordinal) {
+		return degree(edgeIndex().outStarts, ordinal);
+	}
+
+	public int inDegree(int ordinal) {
+		return degree(edgeIndex().inStarts, ordinal);
+	}
+
+	private List<Association> views(int[] starts, int[] rows, int ordinal) {
+		final int degree = degree(starts, ordinal);
+		final List<Association> views = new ArrayList<Association>(degree);
+		for (int i = 0; i < degree; i++) {
+			views.add(associationView(rows[starts[ordinal] + i]));
+		}
+		return views;
+	}
+
+	public List<Association> associationsFrom(int ordinal) {
+		final EdgeIndex index = edgeIndex();
+		return views(index.outStarts, index.outRows, ordinal);
+	}
+
+	public List<Association> associationsTo(int ordinal) {
+		final EdgeIndex index = edgeIndex();
+		return views(index.inStarts, index.inRows, ordinal);
+	}
+
+	/**
+	 * @return The first association between the given ordinals with the
+	 *         given label (possibly null), or -1 if none; only scans the
+	 *         shortest of the associations from the source and the
+	 *         associations to the target
+	 */
+	public int findAssociation(int source, int target, String label) {
+		return find(source, target, label, false);
+	}
+
+	public boolean hasAssociation(int source, int target) {
+		return find(source, target, null, true) != NONE;
+	}
+
+	private int find(int source, int target, String label, boolean anyLabel) {
+		final EdgeIndex index = edgeIndex();
+		final boolean bySource = degree(index.outStarts, source) <= degree(index.inStarts, target);
+		final int[] starts = bySource ? index.outStarts : index.inStarts;
+		final int[] rows = bySource ? index.outRows : index.inRows;
+		final int ordinal = bySource ? source : target;
+		final int degree = degree(starts, ordinal);
+		for (int i = 0; i < degree; i++) {
+			final int row = rows[starts[ordinal] + i];
+			if (associations.get(row, SOURCE) == source && associations.get(row, TARGET) == target) {
+				if (anyLabel) {
+					return row;
+				}
+				final String rowLabel = getAssociationLabel(row);
+				if (label == null ? rowLabel == null : label.equals(rowLabel)) {
+					return row;
+				}
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * @return The number of child rows of the given parent row (or ROOT)
+	 */
+	public int childCount(int parent) {
+		final Layout current = layout();
+		return current.childStarts[parent + 2] - current.childStarts[parent + 1];
+	}
+
+	/**
+	 * @return New views of the child rows of the given parent row (or ROOT),
+	 *         in display order
+	 */
+	public AbstractNode[] children(int parent) {
+		final Layout current = layout();
+		final int start = current.childStarts[parent + 1];
+		final AbstractNode[] views = new AbstractNode[current.childStarts[parent + 2] - start];
+		for (int i = 0; i < views.length; i++) {
+			views[i] = view(current.children[start + i]);
+		}
+		return views;
+	}
+
+	/**
+	 * @return The number of nodes and associations in the subtree of the
+	 *         given row, as an estimate of its rendering cost
+	 */
+	public int weight(int row) {
+		if (row == ROOT) {
+			return 1 + nodeCount + associations.size();
+		}
+		if (weightsNodeCount != nodeCount || weightsAssociationCount != associations.size()) {
+			weights = weights();
+			weightsNodeCount = nodeCount;
+			weightsAssociationCount = associations.size();
+		}
+		return weights[row];
+	}
+
+	/**
+	 * @return The weights of all the rows, in a single pass from the last row
+	 *         up, children being added after their parents
+	 */
+	private int[] weights() {
+		final int[] weights = new int[nodeCount];
+		for (int row = nodeCount - 1; row >= 0; row--) {
+			weights[row] += 1 + associationCount(row);
+			if (nodeParents[row] != ROOT) {
+				weights[nodeParents[row]] += weights[row];
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * @return The statistics of the whole graph, in a single pass over the
+	 *         rows, parents being added before their children
+	 */
+	public GraphStatistics statistics() {
+		final int[] depths = new int[nodeCount];
+		int nodes = 0;
+		int clusters = 0;
+		int depth = 0;
+		for (int row = 0; row < nodeCount; row++) {
+			final int parentDepth = nodeParents[row] == ROOT ? 0 : depths[nodeParents[row]];
+			if (nodeKinds[row] == CLUSTER) {
+				clusters++;
+				depths[row] = parentDepth + 1;
+				depth = Math.max(depth, depths[row]);
+			} else {
+				nodes++;
+				depths[row] = parentDepth;
+			}
+		}
+		return new GraphStatistics(nodes, associations.size(), clusters, depth);
+	}
+
+	/**
+	 * Renders the given node straight from the columns, with the label
+	 * formatter and compact mode of the given options; in the style classes
+	 * mode, through the views instead, to share the grouping by style of the
+	 * object graphs. The parallel and fragment cache modes are ignored.
+	 */
+	public void render(Appendable out, AbstractNode node, RenderOptions renderOptions) throws IOException {
+		final Layout current = layout();
+		if (renderOptions.isStyleClasses()) {
+			node.renderContent(out, renderOptions.isParallel() ? renderOptions.withParallel(false) : renderOptions);
+			return;
+		}
+		final boolean compact = renderOptions.isCompact();
+		final LabelFormatter labelFormatter = registry.labelFormatter(renderOptions);
+		final int row = node.row();
+		if (row != ROOT) {
+			if (nodeKinds[row] == CLUSTER) {
+				renderCluster(out, current, row, compact, labelFormatter);
+			} else {
+				renderNode(out, row, compact, labelFormatter);
+			}
+			return;
+		}
+		DotRenderer.openGraph(out, root.getLabel(), root.getDirection(), compact);
+		renderNodes(out, current, ROOT, compact, labelFormatter);
+		renderAssociations(out, ROOT, compact);
+		DotRenderer.closeGraph(out, compact);
+	}
+
+	private void renderNodes(Appendable out, Layout current, int parent, boolean compact,
+			LabelFormatter labelFormatter) throws IOException {
+		for (int i = current.childStarts[parent + 1]; i < current.childStarts[parent + 2]; i++) {
+			final int row = current.children[i];
+			if (nodeKinds[row] == CLUSTER) {
+				renderCluster(out, current, row, compact, labelFormatter);
+			} else {
+				renderNode(out, row, compact, labelFormatter);
+			}
+		}
+	}
+
+	private void renderAssociations(Appendable out, int owner, boolean compact) throws IOException {
+		for (int row = firstAssociations[owner + 1]; row != NONE; row = associations.get(row, NEXT)) {
+			final String label = getAssociationLabel(row);
+			final String displayLabel = label == null ? null : "label=\"" + DotEscaper.escapeQuoted(label) + "\"";
+			DotRenderer.edge(out, registry.uniqueId(associations.get(row, SOURCE)), registry.uniqueId(associations
+					.get(row, TARGET)), getAssociationComment(row), displayLabel, getAssociationOptions(row), compact);
+		}
+	}
+
+	private void renderNode(Appendable out, int row, boolean compact, LabelFormatter labelFormatter)
+			throws IOException {
+		final String label = getLabel(row);
+		if (label == null) {
+			return;
+		}
+		final String comment = getComment(row);
+		if (comment != null && !compact) {
+			DotRenderer.withDotNewLine(out, comment);
+		}
+		final String stereotypes = strings.get(nodeStereotypes[row]);
+		final String content = stereotypes == null ? label : label + STEREOTYPE_SEPARATOR + stereotypes;
+		DotRenderer.node(out, registry.uniqueId(nodeOrdinals[row]), labelFormatter.format(content, 20),
+				getOptions(row), compact);
+		renderAssociations(out, row, compact);
+	}
+
+	private void renderCluster(Appendable out, Layout current, int row, boolean compact,
+			LabelFormatter labelFormatter) throws IOException {
+		final String label = getLabel(row);
+		final String stereotypes = strings.get(nodeStereotypes[row]);
+		final String content;
+		if (label == null) {
+			content = stereotypes == null ? "" : stereotypes;
+		} else {
+			content = stereotypes == null ? label : label + STEREOTYPE_SEPARATOR + stereotypes;
+		}
+		DotRenderer.openCluster(out, CLUSTER_PREFIX + registry.uniqueId(nodeOrdinals[row]), compact);
+		DotRenderer.cluster(out, content, compact);
+		renderNodes(out, current, row, compact, labelFormatter);
+		renderAssociations(out, row, compact);
+		DotRenderer.closeCluster(out, compact);
+	}
+
+	/**
+	 * @return The layout of the current rows, only sorted again once nodes
+	 *         were added since
+	 */
+	private Layout layout() {
+		if (layout == null || layout.children.length != nodeCount) {
+			layout = new Layout();
+		}
+		return layout;
+	}
+
+	/**
+	 * @return The index of the current associations, only built again once
+	 *         associations were added since
+	 */
+	private EdgeIndex edgeIndex() {
+		if (edgeIndex == null || edgeIndex.size != associations.size()) {
+			edgeIndex = new EdgeIndex();
+		}
+		return edgeIndex;
+	}
+
+	/**
+	 * The association rows grouped by source and by target ordinal, in row
+	 * order within each group; the group of ordinal o starts at index o of
+	 * the starts and ends at index o + 1
+	 */
+	private final class EdgeIndex {
+
+		private final int size = associations.size();
+
+		private final int[] outStarts;
+
+		private final int[] outRows = new int[size];
+
+		private final int[] inStarts;
+
+		private final int[] inRows = new int[size];
+
+		EdgeIndex() {
+			int ordinals = 0;
+			for (int row = 0; row < size; row++) {
+				ordinals = Math.max(ordinals, Math.max(associations.get(row, SOURCE), associations.get(row, TARGET))
+						+ 1);
+			}
+			outStarts = group(SOURCE, ordinals, outRows);
+			inStarts = group(TARGET, ordinals, inRows);
+		}
+
+		/**
+		 * Stable counting sort of the association rows by the given end
+		 */
+		private int[] group(int end, int ordinals, int[] rows) {
+			final int[] starts = new int[ordinals + 1];
+			for (int row = 0; row < size; row++) {
+				starts[associations.get(row, end) + 1]++;
+			}
+			for (int o = 1; o < starts.length; o++) {
+				starts[o] += starts[o - 1];
+			}
+			final int[] next = Arrays.copyOf(starts, ordinals);
+			for (int row = 0; row < size; row++) {
+				rows[next[associations.get(row, end)]++] = row;
+			}
+			return starts;
+		}
+	}
+
+	/**
+	 * The node rows grouped by parent, the children of each parent sorted by
+	 * ordinal; the group of parent row p starts at index p + 1 of the starts,
+	 * the ROOT group at index 0
+	 */
+	private final class Layout {
+
+		private final int[] childStarts = new int[nodeCount + 2];
+
+		private final int[] children = new int[nodeCount];
+
+		Layout() {
+			// stable counting sort of the rows by parent
+			for (int i = 0; i < nodeCount; i++) {
+				childStarts[nodeParents[i] + 2]++;
+			}
+			for (int p = 2; p < childStarts.length; p++) {
+				childStarts[p] += childStarts[p - 1];
+			}
+			final int[] next = childStarts.clone();
+			for (int i = 0; i < nodeCount; i++) {
+				children[next[nodeParents[i] + 1]++] = i;
+			}
+			// sorts each group of children by ordinal, rows being unique per
+			// parent and ordinal
+			final long[] keys = new long[nodeCount];
+			for (int i = 0; i < nodeCount; i++) {
+				keys[i] = ((long) nodeOrdinals[children[i]] << 32) | children[i];
+			}
+			for (int p = 0; p < nodeCount + 1; p++) {
+				Arrays.sort(keys, childStarts[p], childStarts[p + 1]);
+			}
+			for (int i = 0; i < nodeCount; i++) {
+				children[i] = (int) keys[i];
+			}
+		}
+	}
+
+	public String toString() {
+		return "GraphColumns: " + nodeCount + " nodes, " + associations.size() + " associations";
+	}
+}
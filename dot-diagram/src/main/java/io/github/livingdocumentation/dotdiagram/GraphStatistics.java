@@ -0,0 +1,77 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+
+/**
+ * The cheap statistics of a graph that predict its layout time, in a single
+ * walk of the graph
+ */
+public final class GraphStatistics {
+
+	private final int nodeCount;
+
+	private final int edgeCount;
+
+	private final int clusterCount;
+
+	private final int clusterDepth;
+
+	public GraphStatistics(int nodeCount, int edgeCount, int clusterCount, int clusterDepth) {
+		this.nodeCount = nodeCount;
+		this.edgeCount = edgeCount;
+		this.clusterCount = clusterCount;
+		this.clusterDepth = clusterDepth;
+	}
+
+	public static GraphStatistics of(DotGraph graph) {
+		if (graph.columns() != null) {
+			return graph.columns().statistics();
+		}
+		final int[] counts = new int[4];
+		walk(graph.getDigraph(), 0, counts);
+		return new GraphStatistics(counts[0], counts[1], counts[2], counts[3]);
+	}
+
+	private static void walk(AbstractNode parent, int depth, int[] counts) {
+		counts[1] += parent.associations.size();
+		counts[3] = Math.max(counts[3], depth);
+		for (int i = 0; i < parent.nodes.size(); i++) {
+			final AbstractNode node = parent.nodes.get(i);
+			if (node instanceof Cluster) {
+				counts[2]++;
+				walk(node, depth + 1, counts);
+			} else {
+				counts[0]++;
+				walk(node, depth, counts);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of nodes, not counting the clusters
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	public int getClusterCount() {
+		return clusterCount;
+	}
+
+	/**
+	 * @return The deepest nesting of clusters, 0 without any cluster
+	 */
+	public int getClusterDepth() {
+		return clusterDepth;
+	}
+
+	public String toString() {
+		return "GraphStatistics nodes=" + nodeCount + " edges=" + edgeCount + " clusters=" + clusterCount
+				+ " clusterDepth=" + clusterDepth;
+	}
+}
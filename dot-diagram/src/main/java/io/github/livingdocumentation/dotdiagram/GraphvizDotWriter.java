@@ -1,10 +1,26 @@
 package io.github.livingdocumentation.dotdiagram;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.github.livingdocumentation.dotdiagram.EngineSelector.Engine;
 
 /**
  * Java wrapper around the Graphviz Dot grapher; requires Graphviz to be
@@ -13,6 +29,21 @@ import java.util.Properties;
  */
 public final class GraphvizDotWriter extends AbstractDotWriter {
 
+	/**
+	 * The default number of diagrams rendered by a single dot process in
+	 * batch mode
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	private static final long POLLING_MILLIS = 10;
+
+	// the single thread polling the exit of the asynchronous renderings
+	private static final ScheduledExecutorService EXITS = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "dot-exits");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	private final String path;
 
 	private final String dotPath;
@@ -63,6 +94,11 @@ public final class GraphvizDotWriter extends AbstractDotWriter {
 		return path;
 	}
 
+	@Override
+	protected String getRenderingKey() {
+		return super.getRenderingKey() + " " + dotPath + " " + commandTemplate;
+	}
+
 	/**
 	 * @param filename
 	 *            The filename without the extension and its path
@@ -71,22 +107,360 @@ public final class GraphvizDotWriter extends AbstractDotWriter {
 	 */
 	@Override
 	public void render(String filename) throws InterruptedException, IOException {
-		final Object[] args = { dotPath, path + filename };
-		final String command = MessageFormat.format(commandTemplate, args);
+		render(filename, null, 0);
+	}
+
+	/**
+	 * @see #renderAsync(String, long, TimeUnit)
+	 */
+	public CompletableFuture<Void> renderAsync(String filename) {
+		return renderAsync(filename, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts dot on the given dot file and returns at once; the exit of all
+	 * the running processes is polled by a single thread, and their output is
+	 * redirected to a file, so that many renderings may be in flight without
+	 * a thread each. Cancelling the future destroys the process.
+	 * 
+	 * @param timeout
+	 *            The time after which the process is destroyed and the
+	 *            rendering fails, or 0 for none
+	 */
+	public CompletableFuture<Void> renderAsync(final String filename, long timeout, TimeUnit unit) {
+		final CompletableFuture<Void> rendering = new CompletableFuture<Void>();
+		final File log;
+		final Process p;
+		final DotMetricsListener listener = getMetricsListener();
+		final boolean metered = listener != DotMetricsListener.NONE;
+		final long start = metered ? System.nanoTime() : 0;
+		final long spawn;
+		try {
+			log = File.createTempFile("dot-", ".log");
+			p = start(command(filename, null), log);
+			spawn = metered ? System.nanoTime() - start : 0;
+		} catch (IOException e) {
+			rendering.completeExceptionally(e);
+			return rendering;
+		}
+		final long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : Long.MAX_VALUE;
+		final ScheduledFuture<?> polling = EXITS.scheduleWithFixedDelay(() -> {
+			if (!p.isAlive()) {
+				try {
+					finish(filename, p, log);
+					rendering.complete(null);
+				} catch (IOException | RuntimeException e) {
+					rendering.completeExceptionally(e);
+				}
+			} else if (System.nanoTime() - deadline > 0) {
+				rendering.completeExceptionally(new DotDiagramException("Graphviz timed out on " + filename
+						+ ".dot after " + timeout + " " + unit.toString().toLowerCase()));
+			}
+		}, POLLING_MILLIS, POLLING_MILLIS, TimeUnit.MILLISECONDS);
+		rendering.whenComplete((result, error) -> {
+			polling.cancel(false);
+			if (metered) {
+				listener.imageRendered(filename, spawn, System.nanoTime() - start, p.isAlive() ? -1 : p
+						.exitValue());
+			}
+			if (error != null && p.isAlive()) {
+				p.destroyForcibly();
+				log.delete();
+			}
+		});
+		return rendering;
+	}
+
+	/**
+	 * Writes the dot file then renders it asynchronously
+	 * 
+	 * @return The future filename of the dot-generated picture
+	 */
+	public CompletableFuture<String> toImageAsync(String filename, String content, long timeout, TimeUnit unit)
+			throws IOException {
+		write(filename, content);
+		return image(filename, renderAsync(filename, timeout, unit));
+	}
 
-		final Process p = Runtime.getRuntime().exec(command);
-		final BufferedReader reader = new BufferedReader(new InputStreamReader(p.getErrorStream()));
+	/**
+	 * Streams the content to the dot file then renders it asynchronously
+	 * 
+	 * @return The future filename of the dot-generated picture
+	 */
+	public CompletableFuture<String> toImageAsync(String filename, Renderable content, long timeout, TimeUnit unit)
+			throws IOException {
+		write(filename, content);
+		return image(filename, renderAsync(filename, timeout, unit));
+	}
+
+	private CompletableFuture<String> image(String filename, CompletableFuture<Void> rendering) {
+		final CompletableFuture<String> image = rendering.thenApply(done -> filename + imageExtension);
+		// cancelling the image cancels the rendering, destroying the process
+		image.whenComplete((result, error) -> {
+			if (image.isCancelled()) {
+				rendering.cancel(true);
+			}
+		});
+		return image;
+	}
+
+	/**
+	 * Writes the dot file, then renders it with the engine selected from the
+	 * statistics of the graph, in place of dot in the command line (or as its
+	 * argument {2}), and with the fallback engine if the selected one exceeds
+	 * its time budget; the image is path + filename + image extension
+	 * 
+	 * @return The engine the image was rendered with
+	 */
+	public Engine toImage(String filename, DotGraph graph, EngineSelector engines) throws InterruptedException,
+			IOException {
+		write(filename, graph);
+		final Engine engine = engines.select(GraphStatistics.of(graph));
+		final Engine fallback = engines.getFallback();
+		final long budget = engines.getTimeBudgetMillis();
+		if (fallback == null || fallback.equals(engine)) {
+			render(filename, engine, 0);
+			return engine;
+		}
+		if (render(filename, engine, budget)) {
+			return engine;
+		}
+		render(filename, fallback, 0);
+		return fallback;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            The time after which the process is destroyed, 0 for none
+	 * @return false if the process was destroyed on timeout
+	 */
+	private boolean render(String filename, Engine engine, long timeoutMillis) throws InterruptedException,
+			IOException {
+		final File log = File.createTempFile("dot-", ".log");
+		final DotMetricsListener listener = getMetricsListener();
+		if (listener == DotMetricsListener.NONE) {
+			final Process p = start(command(filename, engine), log);
+			if (!await(p, log, timeoutMillis)) {
+				return false;
+			}
+			finish(filename, p, log);
+			return true;
+		}
+		final long start = System.nanoTime();
+		final Process p = start(command(filename, engine), log);
+		final long spawn = System.nanoTime() - start;
+		final boolean done = await(p, log, timeoutMillis);
+		listener.imageRendered(filename, spawn, System.nanoTime() - start, done ? p.exitValue() : -1);
+		if (!done) {
+			return false;
+		}
+		finish(filename, p, log);
+		return true;
+	}
+
+	/**
+	 * @return false if the process was destroyed on timeout, along with its
+	 *         log
+	 */
+	private static boolean await(Process p, File log, long timeoutMillis) throws InterruptedException {
+		try {
+			if (timeoutMillis > 0 && !p.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				p.destroyForcibly().waitFor();
+				log.delete();
+				return false;
+			}
+			p.waitFor();
+		} finally {
+			p.destroy();
+		}
+		return true;
+	}
 
+	/**
+	 * @param engine
+	 *            The engine replacing dot in the command template, or null for
+	 *            the template as is
+	 */
+	private String command(String filename, Engine engine) {
+		String template = commandTemplate;
+		if (engine != null && !template.contains("{2}")) {
+			if (!template.startsWith("{0}dot ")) {
+				throw new DotDiagramException("The command line must start with {0}dot or use {2} for the engine: "
+						+ template);
+			}
+			template = "{0}{2}" + template.substring("{0}dot".length());
+		}
+		final Object[] args = { dotPath, path + filename, engine == null ? "dot" : engine.toCommand() };
+		return MessageFormat.format(template, args);
+	}
+
+	/**
+	 * Starts the command, split on white spaces, with its standard and error
+	 * outputs to the given log file, so that no pipe can fill up
+	 */
+	private Process start(String commandLine, File log) throws IOException {
+		final StringTokenizer tokens = new StringTokenizer(commandLine);
+		final List<String> command = new ArrayList<String>();
+		while (tokens.hasMoreTokens()) {
+			command.add(tokens.nextToken());
+		}
+		try {
+			return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		} catch (IOException e) {
+			log.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Fails with the output of the exited process if its exit value is not 0,
+	 * and deletes its log
+	 */
+	private static void finish(String filename, Process p, File log) throws IOException {
+		try {
+			if (p.exitValue() != 0) {
+				final StringBuilder errorMessage = new StringBuilder();
+				for (String line : Files.readAllLines(log.toPath(), Charset.defaultCharset())) {
+					errorMessage.append(String.format("%n")).append(line);
+				}
+				throw new DotDiagramException("Errors running Graphviz on " + filename + ".dot" + errorMessage);
+			}
+		} finally {
+			log.delete();
+		}
+	}
+
+	/**
+	 * @see #toImages(Collection, int)
+	 */
+	public List<Future<String>> toImages(Collection<DiagramJob> jobs) throws InterruptedException, IOException {
+		return toImages(jobs, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Batch mode, to save the startup of a dot process per diagram: writes
+	 * the dot files of all the given diagrams, then renders them with a single
+	 * dot process per chunk of the given size, in the format of the image
+	 * extension; the command-line template is not used.
+	 * 
+	 * @return The image filename of each diagram, in the order of the jobs,
+	 *         or its failure with the errors of dot about its file
+	 */
+	public List<Future<String>> toImages(Collection<DiagramJob> jobs, int batchSize) throws InterruptedException,
+			IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+		}
+		final List<Future<String>> images = new ArrayList<Future<String>>(jobs.size());
+		final List<Batched> written = new ArrayList<Batched>();
+		for (DiagramJob job : jobs) {
+			final CompletableFuture<String> image = new CompletableFuture<String>();
+			images.add(image);
+			try {
+				job.write(this);
+				written.add(new Batched(job.getFilename(), image));
+			} catch (IOException e) {
+				image.completeExceptionally(e);
+			}
+		}
+		for (int from = 0; from < written.size(); from += batchSize) {
+			renderBatch(written.subList(from, Math.min(from + batchSize, written.size())));
+		}
+		return images;
+	}
+
+	/**
+	 * Runs dot -O on the files of the batch, named file.dot.ext by dot then
+	 * renamed file.ext; dot may stop at the first file it fails on, so the
+	 * first file without image is failed, along with any other file dot
+	 * complained about, and the rest is run again
+	 */
+	private void renderBatch(List<Batched> batch) throws InterruptedException, IOException {
+		List<Batched> pending = batch;
+		while (!pending.isEmpty()) {
+			for (Batched file : pending) {
+				Files.deleteIfExists(file.output.toPath());
+			}
+			final DotMetricsListener listener = getMetricsListener();
+			final boolean metered = listener != DotMetricsListener.NONE;
+			final long start = metered ? System.nanoTime() : 0;
+			final String errors = runBatch(pending);
+			// the time of the batch, amortized over its diagrams
+			final long wall = metered ? (System.nanoTime() - start) / pending.size() : 0;
+			final List<Batched> retry = new ArrayList<Batched>();
+			boolean failed = false;
+			for (Batched file : pending) {
+				if (file.output.exists()) {
+					Files.move(file.output.toPath(), new File(path + file.filename + imageExtension).toPath(),
+							StandardCopyOption.REPLACE_EXISTING);
+					file.image.complete(file.filename + imageExtension);
+					listener.imageRendered(file.filename, 0, wall, 0);
+				} else if (!failed || errors.contains(file.dotFile)) {
+					failed = true;
+					listener.imageRendered(file.filename, 0, wall, 1);
+					file.image.completeExceptionally(new DotDiagramException("Errors running Graphviz on "
+							+ file.filename + ".dot" + errorsAbout(errors, file.dotFile)));
+				} else {
+					retry.add(file);
+				}
+			}
+			pending = retry;
+		}
+	}
+
+	private String runBatch(List<Batched> batch) throws InterruptedException, IOException {
+		final List<String> command = new ArrayList<String>();
+		command.add(dotPath + "dot");
+		command.add("-T" + imageExtension.substring(imageExtension.lastIndexOf('.') + 1));
+		command.add("-O");
+		for (Batched file : batch) {
+			command.add(file.dotFile);
+		}
+		final Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
 		final String newLine = String.format("%n");
-		final StringBuilder errorMessage = new StringBuilder();
+		final StringBuilder errors = new StringBuilder();
 		String line = null;
 		while ((line = reader.readLine()) != null) {
-			errorMessage.append(newLine);
-			errorMessage.append(line);
+			errors.append(newLine);
+			errors.append(line);
+		}
+		p.waitFor();
+		return errors.toString();
+	}
+
+	/**
+	 * @return The lines of the errors mentioning the given file, or all the
+	 *         errors if none does
+	 */
+	private static String errorsAbout(String errors, String file) {
+		final StringBuilder about = new StringBuilder();
+		for (String line : errors.split("\\R")) {
+			if (line.contains(file)) {
+				about.append(String.format("%n")).append(line);
+			}
 		}
-		int result = p.waitFor();
-		if (result != 0) {
-			throw new DotDiagramException("Errors running Graphviz on " + filename + ".dot" + errorMessage);
+		return about.length() > 0 ? about.toString() : errors;
+	}
+
+	/**
+	 * A diagram of a batch, with its future image
+	 */
+	private final class Batched {
+
+		private final String filename;
+
+		private final String dotFile;
+
+		private final File output;
+
+		private final CompletableFuture<String> image;
+
+		Batched(String filename, CompletableFuture<String> image) {
+			this.filename = filename;
+			this.dotFile = path + filename + ".dot";
+			this.output = new File(dotFile + imageExtension);
+			this.image = image;
 		}
 	}
 
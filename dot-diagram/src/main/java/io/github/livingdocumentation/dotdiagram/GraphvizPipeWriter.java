@@ -0,0 +1,291 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Java wrapper around the Graphviz Dot grapher that needs no file at all: the
+ * dot content is piped to the standard input of dot, in UTF-8, and the image
+ * is read from its standard output; requires Graphviz to be installed on the
+ * machine.
+ * 
+ * For example:
+ * 
+ * <pre>
+ * final GraphvizPipeWriter writer = new GraphvizPipeWriter(&quot;/usr/bin/&quot;, &quot;png&quot;);
+ * final byte[] png = writer.toImage(graph);
+ * </pre>
+ */
+public final class GraphvizPipeWriter {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final List<String> command;
+
+	/**
+	 * @param dotPath
+	 *            The path to the dot executable, must end with a slash, or be
+	 *            empty to look it up in the PATH
+	 * @param format
+	 *            The output format, e.g. "png" or "svg"
+	 * @param arguments
+	 *            Any other arguments to dot, e.g. "-Gdpi=72"
+	 */
+	public GraphvizPipeWriter(String dotPath, String format, String... arguments) {
+		this(command(dotPath, format, arguments));
+	}
+
+	/**
+	 * @param command
+	 *            The whole command line, reading dot from its standard input
+	 *            and writing the image to its standard output
+	 */
+	public GraphvizPipeWriter(List<String> command) {
+		if (command.isEmpty()) {
+			throw new IllegalArgumentException("The command is required");
+		}
+		this.command = Collections.unmodifiableList(new ArrayList<String>(command));
+	}
+
+	private static List<String> command(String dotPath, String format, String... arguments) {
+		final List<String> command = new ArrayList<String>();
+		command.add((dotPath == null ? "" : dotPath) + "dot");
+		command.add("-T" + format);
+		command.addAll(Arrays.asList(arguments));
+		return command;
+	}
+
+	public List<String> getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return The image for the given dot content
+	 */
+	public byte[] toImage(String content) throws IOException, InterruptedException {
+		final ByteArrayOutputStream image = new ByteArrayOutputStream(BUFFER_SIZE);
+		toImage(content, image);
+		return image.toByteArray();
+	}
+
+	public byte[] toImage(Renderable content) throws IOException, InterruptedException {
+		final ByteArrayOutputStream image = new ByteArrayOutputStream(BUFFER_SIZE);
+		toImage(content, image);
+		return image.toByteArray();
+	}
+
+	public byte[] toImage(InputStream content) throws IOException, InterruptedException {
+		final ByteArrayOutputStream image = new ByteArrayOutputStream(BUFFER_SIZE);
+		toImage(content, image);
+		return image.toByteArray();
+	}
+
+	/**
+	 * @return The standard output of dot, to be read while dot is still
+	 *         running; closing it drains what is left, waits for dot and fails
+	 *         with a DotDiagramException if dot did
+	 */
+	public InputStream toImageStream(Renderable content) throws IOException {
+		final Run run = start(renderer(content));
+		return new FilterInputStream(run.process.getInputStream()) {
+
+			private boolean closed;
+
+			public void close() throws IOException {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				try {
+					copy(in, NullOutputStream.INSTANCE);
+					in.close();
+					run.finish();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for Graphviz " + command, e);
+				} finally {
+					run.process.destroy();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writes the image for the given dot content into the given stream, which
+	 * is not closed
+	 */
+	public void toImage(String content, OutputStream image) throws IOException, InterruptedException {
+		run(stdin -> {
+			final Writer writer = new OutputStreamWriter(stdin, StandardCharsets.UTF_8);
+			writer.write(content);
+			writer.flush();
+		}, image);
+	}
+
+	/**
+	 * Streams the given content (typically a DotGraph) into dot, without
+	 * building the whole dot text in memory
+	 */
+	public void toImage(Renderable content, OutputStream image) throws IOException, InterruptedException {
+		run(renderer(content), image);
+	}
+
+	private static Feeder renderer(Renderable content) {
+		return stdin -> {
+			final Writer writer = new BufferedWriter(new OutputStreamWriter(stdin, StandardCharsets.UTF_8));
+			content.render(writer);
+			writer.flush();
+		};
+	}
+
+	public void toImage(InputStream content, OutputStream image) throws IOException, InterruptedException {
+		run(stdin -> copy(content, stdin), image);
+	}
+
+	/**
+	 * Something writing the dot content into the standard input of dot
+	 */
+	interface Feeder {
+		void feed(OutputStream stdin) throws IOException;
+	}
+
+	/**
+	 * Runs dot, feeding its standard input and draining its standard error in
+	 * their own threads while its standard output is copied into the image
+	 */
+	void run(Feeder feeder, OutputStream image) throws IOException, InterruptedException {
+		final Run run = start(feeder);
+		try {
+			try (InputStream stdout = run.process.getInputStream()) {
+				copy(stdout, image);
+			}
+			run.finish();
+		} finally {
+			run.process.destroy();
+		}
+	}
+
+	/**
+	 * Starts dot with its standard input and standard error pumps, leaving its
+	 * standard output to the caller
+	 */
+	private Run start(Feeder feeder) throws IOException {
+		final Process process = new ProcessBuilder(command).start();
+		final Pump input = new Pump("dot-stdin") {
+			protected void pump() throws IOException {
+				try (OutputStream stdin = process.getOutputStream()) {
+					feeder.feed(stdin);
+				}
+			}
+		};
+		final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		final Pump error = new Pump("dot-stderr") {
+			protected void pump() throws IOException {
+				try (InputStream stderr = process.getErrorStream()) {
+					copy(stderr, errors);
+				}
+			}
+		};
+		input.start();
+		error.start();
+		return new Run(process, input, error, errors);
+	}
+
+	/**
+	 * A running dot process, once its standard output has been read
+	 */
+	private final class Run {
+
+		final Process process;
+
+		private final Pump input;
+
+		private final Pump error;
+
+		private final ByteArrayOutputStream errors;
+
+		Run(Process process, Pump input, Pump error, ByteArrayOutputStream errors) {
+			this.process = process;
+			this.input = input;
+			this.error = error;
+			this.errors = errors;
+		}
+
+		void finish() throws IOException, InterruptedException {
+			final int result = process.waitFor();
+			input.join();
+			error.join();
+			if (result != 0) {
+				throw new DotDiagramException("Errors running Graphviz " + command + ": exit code " + result + " "
+						+ new String(errors.toByteArray(), StandardCharsets.UTF_8).trim());
+			}
+			input.rethrow();
+		}
+	}
+
+	static void copy(InputStream in, OutputStream out) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	private static final class NullOutputStream extends OutputStream {
+
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+	/**
+	 * A daemon thread moving bytes from or to the process, keeping its failure
+	 */
+	private abstract static class Pump extends Thread {
+
+		private volatile Exception failure;
+
+		Pump(String name) {
+			super(name);
+			setDaemon(true);
+		}
+
+		public void run() {
+			try {
+				pump();
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			}
+		}
+
+		protected abstract void pump() throws IOException;
+
+		void rethrow() throws IOException {
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if (failure != null) {
+				throw (RuntimeException) failure;
+			}
+		}
+	}
+
+	public String toString() {
+		return "GraphvizPipeWriter command=" + command;
+	}
+}
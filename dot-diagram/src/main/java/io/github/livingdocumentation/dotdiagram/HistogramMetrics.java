@@ -0,0 +1,194 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default metrics listener, keeping in memory a histogram of each
+ * measure, with power of two buckets, and counters, to be scraped by
+ * {@link #toMap()}; lock-free, so that it can be shared by all the renderings.
+ */
+public final class HistogramMetrics implements DotMetricsListener {
+
+	private final Histogram renderNanos = new Histogram();
+
+	private final Histogram nodes = new Histogram();
+
+	private final Histogram edges = new Histogram();
+
+	private final Histogram writeNanos = new Histogram();
+
+	private final Histogram writtenBytes = new Histogram();
+
+	private final Histogram spawnNanos = new Histogram();
+
+	private final Histogram graphvizNanos = new Histogram();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	private final AtomicLong cacheMisses = new AtomicLong();
+
+	public void graphRendered(String title, GraphStatistics statistics, long nanos) {
+		renderNanos.record(nanos);
+		nodes.record(statistics.getNodeCount());
+		edges.record(statistics.getEdgeCount());
+	}
+
+	public void dotWritten(String filename, long bytes, long nanos) {
+		writeNanos.record(nanos);
+		writtenBytes.record(bytes);
+	}
+
+	public void imageRendered(String filename, long spawnNanos, long wallNanos, int status) {
+		this.spawnNanos.record(spawnNanos);
+		graphvizNanos.record(wallNanos);
+		if (status != 0 && (status < 200 || status > 299)) {
+			failures.incrementAndGet();
+		}
+	}
+
+	public void cacheLookup(String filename, boolean hit) {
+		(hit ? cacheHits : cacheMisses).incrementAndGet();
+	}
+
+	public Histogram getRenderNanos() {
+		return renderNanos;
+	}
+
+	public Histogram getNodes() {
+		return nodes;
+	}
+
+	public Histogram getEdges() {
+		return edges;
+	}
+
+	public Histogram getWriteNanos() {
+		return writeNanos;
+	}
+
+	public Histogram getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	public Histogram getSpawnNanos() {
+		return spawnNanos;
+	}
+
+	public Histogram getGraphvizNanos() {
+		return graphvizNanos;
+	}
+
+	/**
+	 * @return The number of renderings of images that failed or were
+	 *         destroyed
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * @return The count, sum, max, and 50th and 99th percentiles of every
+	 *         histogram, and the counters, by name such as "graphviz.nanos.p99"
+	 */
+	public Map<String, Long> toMap() {
+		final Map<String, Long> map = new LinkedHashMap<String, Long>();
+		renderNanos.addTo(map, "render.nanos");
+		nodes.addTo(map, "render.nodes");
+		edges.addTo(map, "render.edges");
+		writeNanos.addTo(map, "write.nanos");
+		writtenBytes.addTo(map, "write.bytes");
+		spawnNanos.addTo(map, "spawn.nanos");
+		graphvizNanos.addTo(map, "graphviz.nanos");
+		map.put("graphviz.failures", getFailures());
+		map.put("cache.hits", getCacheHits());
+		map.put("cache.misses", getCacheMisses());
+		return map;
+	}
+
+	public String toString() {
+		return "HistogramMetrics " + toMap();
+	}
+
+	/**
+	 * A histogram of non-negative values, with a bucket per power of two: the
+	 * percentiles are the upper bounds of their buckets, so within a factor 2
+	 */
+	public static final class Histogram {
+
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong sum = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long value) {
+			final long v = Math.max(0, value);
+			// bucket i holds the values from 2^(i-1) to 2^i - 1, bucket 0 the zeros
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+			count.incrementAndGet();
+			sum.addAndGet(v);
+			max.accumulateAndGet(v, Math::max);
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getSum() {
+			return sum.get();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param percentile
+		 *            Between 0 and 100
+		 * @return The upper bound of the values under the given percentile,
+		 *         at most the max; 0 when empty
+		 */
+		public long getPercentile(double percentile) {
+			final long total = count.get();
+			if (total == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return i == 63 ? getMax() : Math.min(getMax(), (1L << i) - 1);
+				}
+			}
+			return getMax();
+		}
+
+		void addTo(Map<String, Long> map, String name) {
+			map.put(name + ".count", getCount());
+			map.put(name + ".sum", getSum());
+			map.put(name + ".max", getMax());
+			map.put(name + ".p50", getPercentile(50));
+			map.put(name + ".p99", getPercentile(99));
+		}
+
+		public String toString() {
+			return "Histogram count=" + getCount() + " sum=" + getSum() + " max=" + getMax();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+
+/**
+ * A growable table of rows of a fixed number of int columns, stored row after
+ * row in a single array
+ */
+class IntTable {
+
+	protected final int columns;
+
+	private int[] values;
+
+	private int rows = 0;
+
+	IntTable(int columns) {
+		this.columns = columns;
+		this.values = new int[16 * columns];
+	}
+
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * @return The number of the new row, all its columns being 0
+	 */
+	public int addRow() {
+		if ((rows + 1) * columns > values.length) {
+			values = Arrays.copyOf(values, values.length + (values.length >> 1) + columns);
+		}
+		return rows++;
+	}
+
+	public int get(int row, int column) {
+		return values[row * columns + column];
+	}
+
+	public void set(int row, int column, int value) {
+		values[row * columns + column] = value;
+	}
+
+	public String toString() {
+		return "IntTable: " + size() + " rows of " + columns + " columns";
+	}
+}
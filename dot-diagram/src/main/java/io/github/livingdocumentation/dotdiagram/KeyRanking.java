@@ -0,0 +1,171 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The rank of each node key among all the keys added so far, maintained as
+ * they are added: an order-statistic treap of the ordinals, in arrays indexed
+ * by ordinal, ordered by their keys then by ordinal, so that adding a key and
+ * getting the rank of a key or the key of a rank are all O(log n). Not
+ * thread-safe.
+ */
+final class KeyRanking {
+
+	private static final int NIL = -1;
+
+	private final Comparator<Object> order;
+
+	private Object[] keys = new Object[16];
+
+	private int[] lefts = new int[16];
+
+	private int[] rights = new int[16];
+
+	private int[] sizes = new int[16];
+
+	private int[] priorities = new int[16];
+
+	private int root = NIL;
+
+	private int size = 0;
+
+	private int seed = 0x2545F491;
+
+	KeyRanking(Comparator<Object> order) {
+		this.order = order;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void add(int ordinal, Object key) {
+		if (ordinal >= keys.length) {
+			final int capacity = Math.max(ordinal + 1, keys.length + (keys.length >> 1));
+			keys = Arrays.copyOf(keys, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			priorities = Arrays.copyOf(priorities, capacity);
+		}
+		keys[ordinal] = key;
+		lefts[ordinal] = NIL;
+		rights[ordinal] = NIL;
+		sizes[ordinal] = 1;
+		// xorshift
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		priorities[ordinal] = seed;
+		root = insert(root, ordinal);
+		size++;
+	}
+
+	private int insert(int node, int ordinal) {
+		if (node == NIL) {
+			return ordinal;
+		}
+		sizes[node]++;
+		if (compare(ordinal, node) < 0) {
+			lefts[node] = insert(lefts[node], ordinal);
+			return priorities[lefts[node]] > priorities[node] ? rotateRight(node) : node;
+		}
+		rights[node] = insert(rights[node], ordinal);
+		return priorities[rights[node]] > priorities[node] ? rotateLeft(node) : node;
+	}
+
+	private int rotateRight(int node) {
+		final int left = lefts[node];
+		lefts[node] = rights[left];
+		rights[left] = node;
+		sizes[left] = sizes[node];
+		sizes[node] = 1 + size(lefts[node]) + size(rights[node]);
+		return left;
+	}
+
+	private int rotateLeft(int node) {
+		final int right = rights[node];
+		rights[node] = lefts[right];
+		lefts[right] = node;
+		sizes[right] = sizes[node];
+		sizes[node] = 1 + size(lefts[node]) + size(rights[node]);
+		return right;
+	}
+
+	private int size(int node) {
+		return node == NIL ? 0 : sizes[node];
+	}
+
+	private int compare(int ordinal1, int ordinal2) {
+		final int diff = order.compare(keys[ordinal1], keys[ordinal2]);
+		return diff != 0 ? diff : Integer.compare(ordinal1, ordinal2);
+	}
+
+	/**
+	 * @return The number of keys before the key of the given ordinal, which
+	 *         must have been added
+	 */
+	public int rank(int ordinal) {
+		int rank = 0;
+		int node = root;
+		while (node != ordinal) {
+			if (compare(ordinal, node) < 0) {
+				node = lefts[node];
+			} else {
+				rank += size(lefts[node]) + 1;
+				node = rights[node];
+			}
+		}
+		return rank + size(lefts[ordinal]);
+	}
+
+	/**
+	 * @return The ordinal of the key of the given rank, or -1 if none
+	 */
+	public int select(int rank) {
+		if (rank < 0 || rank >= size) {
+			return NIL;
+		}
+		int node = root;
+		while (true) {
+			final int before = size(lefts[node]);
+			if (rank < before) {
+				node = lefts[node];
+			} else if (rank == before) {
+				return node;
+			} else {
+				rank -= before + 1;
+				node = rights[node];
+			}
+		}
+	}
+
+	/**
+	 * @return All the ordinals ordered by rank, in a single walk
+	 */
+	public int[] ordinals() {
+		final int[] ordinals = new int[size];
+		int[] stack = new int[32];
+		int depth = 0;
+		int count = 0;
+		int node = root;
+		while (node != NIL || depth > 0) {
+			while (node != NIL) {
+				if (depth == stack.length) {
+					stack = Arrays.copyOf(stack, depth * 2);
+				}
+				stack[depth++] = node;
+				node = lefts[node];
+			}
+			node = stack[--depth];
+			ordinals[count++] = node;
+			node = rights[node];
+		}
+		return ordinals;
+	}
+
+	public String toString() {
+		return "KeyRanking: " + size + " keys";
+	}
+}
@@ -0,0 +1,252 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Formats the labels of the nodes: joins the label and its stereotypes into
+ * lines and wraps them at a given width, in a single pass over their chars,
+ * with the exact same output as DotRenderer.toLines then wrapText; the
+ * formatted labels are kept in a bounded LRU cache keyed by label, stereotypes
+ * and width, as graphs tend to reuse the same few labels and stereotypes.
+ * Thread-safe: large caches are split by hash into stripes, each with its own
+ * lock and LRU order, so that parallel renderings do not wait on each other.
+ */
+public final class LabelFormatter {
+
+	/**
+	 * The default number of formatted labels kept in the cache
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	private static final int MAX_STRIPES = 16;
+
+	private static final int MIN_STRIPE_SIZE = 64;
+
+	private static final LabelFormatter SHARED = new LabelFormatter(DEFAULT_CACHE_SIZE);
+
+	private static final String LINE_SEPARATOR = "\\n ";
+
+	private static final String LINE_BREAK = "\\l";
+
+	private final int cacheSize;
+
+	private final Map<Key, String>[] stripes;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param cacheSize
+	 *            The maximum number of formatted labels to keep, 0 for no
+	 *            cache at all
+	 */
+	public LabelFormatter(final int cacheSize) {
+		if (cacheSize < 0) {
+			throw new IllegalArgumentException("The cache size must be positive: " + cacheSize);
+		}
+		this.cacheSize = cacheSize;
+		int count = 1;
+		while (count < MAX_STRIPES && cacheSize / (count * 2) >= MIN_STRIPE_SIZE) {
+			count *= 2;
+		}
+		this.stripes = newStripes(count, (cacheSize + count - 1) / count);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Map<Key, String>[] newStripes(int count, final int stripeSize) {
+		final Map<Key, String>[] stripes = new Map[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+					return size() > stripeSize;
+				}
+			};
+		}
+		return stripes;
+	}
+
+	/**
+	 * @return The formatter shared by default by all the graphs, so that
+	 *         their labels are reused across graphs, unless a graph is given
+	 *         its own
+	 */
+	public static LabelFormatter shared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return The label followed by one line per stereotype, wrapped at the
+	 *         given width
+	 */
+	public String format(String label, Collection<String> stereotypes, int width) {
+		if (cacheSize == 0) {
+			misses.increment();
+			return wrap(label, stereotypes, width);
+		}
+		final Key key = new Key(label, stereotypes, width);
+		final Map<Key, String> stripe = stripes[(key.hash ^ key.hash >>> 16) & (stripes.length - 1)];
+		String formatted;
+		synchronized (stripe) {
+			formatted = stripe.get(key);
+		}
+		if (formatted != null) {
+			hits.increment();
+			return formatted;
+		}
+		misses.increment();
+		formatted = wrap(label, stereotypes, width);
+		final Collection<String> copy = stereotypes.isEmpty() ? Collections.<String> emptyList()
+				: new ArrayList<String>(stereotypes);
+		synchronized (stripe) {
+			stripe.put(new Key(label, copy, width), formatted);
+		}
+		return formatted;
+	}
+
+	/**
+	 * @return The given text wrapped at the given width
+	 */
+	public String format(String text, int width) {
+		return format(text, Collections.<String> emptyList(), width);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int getSize() {
+		int size = 0;
+		for (Map<Key, String> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public void clear() {
+		for (Map<Key, String> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	/**
+	 * The single pass: a line break is inserted before any token (a space, a
+	 * tab, a newline, or a run of other chars) once the current line is longer
+	 * than the width
+	 */
+	static String wrap(String label, Collection<String> stereotypes, int width) {
+		int capacity = label.length() + 8;
+		for (String stereotype : stereotypes) {
+			capacity += stereotype.length() + LINE_SEPARATOR.length() + 2;
+		}
+		final Wrapper wrapper = new Wrapper(capacity, width);
+		wrapper.append(label);
+		for (String stereotype : stereotypes) {
+			wrapper.append(LINE_SEPARATOR);
+			wrapper.append(stereotype);
+		}
+		return wrapper.toString();
+	}
+
+	private static final class Wrapper {
+
+		private final StringBuilder sb;
+
+		private final int width;
+
+		private int lineLength = 0;
+
+		private boolean inWord = false;
+
+		Wrapper(int capacity, int width) {
+			this.sb = new StringBuilder(capacity);
+			this.width = width;
+		}
+
+		void append(String s) {
+			for (int i = 0; i < s.length(); i++) {
+				final char c = s.charAt(i);
+				final boolean delimiter = c == ' ' || c == '\t' || c == '\n';
+				if ((delimiter || !inWord) && lineLength > width) {
+					sb.append(LINE_BREAK);
+					lineLength = 0;
+				}
+				inWord = !delimiter;
+				sb.append(c);
+				lineLength++;
+			}
+		}
+
+		public String toString() {
+			return sb.toString();
+		}
+	}
+
+	private static final class Key {
+
+		private final String label;
+
+		private final Collection<String> stereotypes;
+
+		private final int width;
+
+		private final int hash;
+
+		Key(String label, Collection<String> stereotypes, int width) {
+			this.label = label;
+			this.stereotypes = stereotypes;
+			this.width = width;
+			int hash = 31 * label.hashCode() + width;
+			for (String stereotype : stereotypes) {
+				hash = 31 * hash + stereotype.hashCode();
+			}
+			this.hash = hash;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return hash == other.hash && width == other.width && label.equals(other.label)
+					&& sameElements(stereotypes, other.stereotypes);
+		}
+
+		private static boolean sameElements(Collection<String> a, Collection<String> b) {
+			if (a.size() != b.size()) {
+				return false;
+			}
+			final Iterator<String> it = b.iterator();
+			for (String element : a) {
+				if (!element.equals(it.next())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	public String toString() {
+		return "LabelFormatter cacheSize=" + cacheSize + " hits=" + hits + " misses=" + misses;
+	}
+}
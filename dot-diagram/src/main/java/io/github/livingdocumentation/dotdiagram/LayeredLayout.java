@@ -0,0 +1,971 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+/**
+ * A Sugiyama-style layered layout of a DotGraph, without Graphviz: cycle
+ * removal by depth-first search, layer assignment by longest path, dummy
+ * vertices along the long edges, crossing reduction by barycenter sweeps
+ * keeping the clusters contiguous, then coordinates pulled towards the
+ * neighbours under the separation constraints. Laid out top to bottom, then
+ * transposed or flipped for the other directions.
+ */
+final class LayeredLayout {
+
+	static final double MARGIN = 8;
+
+	static final double DEFAULT_FONT_SIZE = 9;
+
+	static final double TITLE_FONT_SIZE = 12;
+
+	private static final double CLUSTER_PADDING = 8;
+
+	private static final double NODE_GAP = 18;
+
+	private static final double LAYER_GAP = 32;
+
+	private static final double LOOP_SIZE = 24;
+
+	// the width the labels of the nodes are wrapped at, as by dot
+	private static final int LABEL_WIDTH = 20;
+
+	private static final int SWEEPS = 12;
+
+	private static final int REFINEMENTS = 8;
+
+	final String title;
+
+	final List<Vertex> vertices = new ArrayList<Vertex>();
+
+	final List<Edge> edges = new ArrayList<Edge>();
+
+	final List<Box> clusters = new ArrayList<Box>();
+
+	double width;
+
+	double height;
+
+	private final String direction;
+
+	private final boolean transposed;
+
+	private final Map<Integer, Vertex> byOrdinal = new HashMap<Integer, Vertex>();
+
+	private final LabelFormatter labelFormatter;
+
+	private final List<List<Vertex>> layers = new ArrayList<List<Vertex>>();
+
+	private int maxDepth;
+
+	LayeredLayout(DotGraph graph) {
+		final Digraph digraph = graph.getDigraph();
+		this.labelFormatter = graph.getLabelFormatter();
+		this.title = digraph.getLabel();
+		this.direction = digraph.getDirection() == null ? "TB" : digraph.getDirection().toUpperCase();
+		this.transposed = direction.equals("LR") || direction.equals("RL");
+
+		final List<Association> associations = new ArrayList<Association>();
+		collect(digraph, null, associations);
+		for (Association association : associations) {
+			final Vertex source = vertex(association.source, association.getSourceId());
+			final Vertex target = vertex(association.target, association.getTargetId());
+			edges.add(new Edge(source, target, association.getLabel(), options(association.getOptions())));
+		}
+		if (transposed) {
+			for (Vertex vertex : vertices) {
+				vertex.transpose();
+			}
+		}
+		final int realCount = vertices.size();
+		removeCycles(realCount);
+		assignLayers(realCount);
+		addDummies();
+		order();
+		place();
+		route();
+		transform();
+		frame();
+	}
+
+	private void collect(AbstractNode parent, Box cluster, List<Association> associations) {
+		final AbstractNode[] ordered = parent.orderedNodes();
+		for (int i = 0; i < parent.childCount(); i++) {
+			final AbstractNode node = ordered[i];
+			final String label = node.getLabel();
+			if (node instanceof Cluster) {
+				final List<String> lines = new ArrayList<String>();
+				if (label != null) {
+					lines.add(label);
+				}
+				lines.addAll(node.stereotypes());
+				final Box box = new Box(clusters.size(), node.getId(), lines, options(node.getOptions()), cluster);
+				clusters.add(box);
+				maxDepth = Math.max(maxDepth, box.path.size());
+				collect(node, box, associations);
+			} else if (label != null) {
+				final Vertex vertex = new Vertex(vertices.size(), node.getId(), lines(label, node.stereotypes()),
+						options(node.getOptions()), cluster, false);
+				vertices.add(vertex);
+				byOrdinal.put(node.ordinal, vertex);
+				associations.addAll(node.orderedAssociations());
+			}
+		}
+		associations.addAll(parent.orderedAssociations());
+	}
+
+	/**
+	 * @return The vertex of the given node, created at the root as dot does
+	 *         if the node is not in the graph
+	 */
+	private Vertex vertex(int ordinal, String id) {
+		Vertex vertex = byOrdinal.get(ordinal);
+		if (vertex == null) {
+			vertex = new Vertex(vertices.size(), id, Collections.singletonList(id), Collections
+					.<String, String> emptyMap(), null, false);
+			vertices.add(vertex);
+			byOrdinal.put(ordinal, vertex);
+		}
+		return vertex;
+	}
+
+	/**
+	 * Reverses the edges closing a cycle in a depth-first search, iterative
+	 * so as not to overflow the stack on long chains
+	 */
+	private void removeCycles(int count) {
+		final List<List<Edge>> outgoing = new ArrayList<List<Edge>>(count);
+		for (int i = 0; i < count; i++) {
+			outgoing.add(new ArrayList<Edge>());
+		}
+		for (Edge edge : edges) {
+			if (!edge.isLoop()) {
+				outgoing.get(edge.source.index).add(edge);
+			}
+		}
+		// 0 for not visited, 1 on the stack, 2 done
+		final byte[] state = new byte[count];
+		final int[] next = new int[count];
+		final int[] stack = new int[count];
+		for (int root = 0; root < count; root++) {
+			if (state[root] != 0) {
+				continue;
+			}
+			int top = 0;
+			stack[0] = root;
+			state[root] = 1;
+			while (top >= 0) {
+				final int v = stack[top];
+				final List<Edge> out = outgoing.get(v);
+				if (next[v] < out.size()) {
+					final Edge edge = out.get(next[v]++);
+					final int w = edge.target.index;
+					if (state[w] == 1) {
+						edge.reversed = true;
+					} else if (state[w] == 0) {
+						state[w] = 1;
+						stack[++top] = w;
+					}
+				} else {
+					state[v] = 2;
+					top--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The longest path from the sources, a labelled edge spanning two layers
+	 * to make room for its label, as in dot; the sources are then pulled down
+	 * next to their successors
+	 */
+	private void assignLayers(int count) {
+		final List<List<Edge>> below = new ArrayList<List<Edge>>(count);
+		for (int i = 0; i < count; i++) {
+			below.add(new ArrayList<Edge>());
+		}
+		final int[] indegree = new int[count];
+		for (Edge edge : edges) {
+			if (!edge.isLoop()) {
+				below.get(edge.upper().index).add(edge);
+				indegree[edge.lower().index]++;
+			}
+		}
+		final int[] topological = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			if (indegree[i] == 0) {
+				topological[size++] = i;
+			}
+		}
+		for (int head = 0; head < size; head++) {
+			final Vertex v = vertices.get(topological[head]);
+			for (Edge edge : below.get(v.index)) {
+				final Vertex w = edge.lower();
+				w.layer = Math.max(w.layer, v.layer + edge.span());
+				if (--indegree[w.index] == 0) {
+					topological[size++] = w.index;
+				}
+			}
+		}
+		final boolean[] hasUpper = new boolean[count];
+		for (Edge edge : edges) {
+			if (!edge.isLoop()) {
+				hasUpper[edge.lower().index] = true;
+			}
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			final Vertex v = vertices.get(topological[i]);
+			if (!hasUpper[v.index] && !below.get(v.index).isEmpty()) {
+				int layer = Integer.MAX_VALUE;
+				for (Edge edge : below.get(v.index)) {
+					layer = Math.min(layer, edge.lower().layer - edge.span());
+				}
+				v.layer = layer;
+			}
+		}
+		int layerCount = 0;
+		for (Vertex v : vertices) {
+			layerCount = Math.max(layerCount, v.layer + 1);
+		}
+		for (int i = 0; i < layerCount; i++) {
+			layers.add(new ArrayList<Vertex>());
+		}
+		for (Vertex v : vertices) {
+			layers.get(v.layer).add(v);
+		}
+	}
+
+	/**
+	 * Breaks the edges spanning several layers with a dummy vertex per layer,
+	 * in the innermost cluster of both ends; the middle dummy of a labelled
+	 * edge is as wide as its label
+	 */
+	private void addDummies() {
+		for (Edge edge : edges) {
+			if (edge.isLoop()) {
+				continue;
+			}
+			final Vertex upper = edge.upper();
+			final Vertex lower = edge.lower();
+			final Box cluster = commonCluster(upper.cluster, lower.cluster);
+			edge.chain.add(upper);
+			final int middle = (upper.layer + lower.layer) / 2;
+			for (int layer = upper.layer + 1; layer < lower.layer; layer++) {
+				final Vertex dummy = new Vertex(vertices.size(), null, Collections.<String> emptyList(), Collections
+						.<String, String> emptyMap(), cluster, true);
+				dummy.layer = layer;
+				if (layer == middle && edge.label != null) {
+					// the label on the right of the edge, or below when transposed
+					if (transposed) {
+						dummy.w = 2 * edge.labelHeight() + 8;
+						dummy.h = edge.labelWidth();
+					} else {
+						dummy.w = 2 * edge.labelWidth() + 8;
+						dummy.h = edge.labelHeight();
+					}
+					edge.labelVertex = dummy;
+				}
+				vertices.add(dummy);
+				layers.get(layer).add(dummy);
+				edge.chain.add(dummy);
+			}
+			edge.chain.add(lower);
+			for (int i = 1; i < edge.chain.size(); i++) {
+				edge.chain.get(i - 1).down.add(edge.chain.get(i));
+				edge.chain.get(i).up.add(edge.chain.get(i - 1));
+			}
+		}
+	}
+
+	private static Box commonCluster(Box a, Box b) {
+		if (a == null || b == null) {
+			return null;
+		}
+		final int common = commonDepth(a.path, b.path);
+		return common == 0 ? null : a.path.get(common - 1);
+	}
+
+	private static int commonDepth(List<Box> a, List<Box> b) {
+		int k = 0;
+		while (k < a.size() && k < b.size() && a.get(k) == b.get(k)) {
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * Barycenter sweeps down then up, keeping the order with the fewest
+	 * crossings
+	 */
+	private void order() {
+		for (List<Vertex> layer : layers) {
+			for (Vertex v : layer) {
+				v.bary = v.index;
+			}
+			arrange(layer);
+		}
+		int[] best = snapshot();
+		long bestCrossings = crossings();
+		for (int sweep = 0; sweep < SWEEPS && bestCrossings > 0; sweep++) {
+			final boolean down = sweep % 2 == 0;
+			for (int i = 1; i < layers.size(); i++) {
+				final List<Vertex> layer = layers.get(down ? i : layers.size() - 1 - i);
+				for (Vertex v : layer) {
+					v.bary = barycenter(down ? v.up : v.down, v.order);
+				}
+				arrange(layer);
+			}
+			final long crossings = crossings();
+			if (crossings < bestCrossings) {
+				bestCrossings = crossings;
+				best = snapshot();
+			}
+		}
+		for (Vertex v : vertices) {
+			v.order = best[v.index];
+		}
+		for (List<Vertex> layer : layers) {
+			Collections.sort(layer, (v1, v2) -> Integer.compare(v1.order, v2.order));
+		}
+	}
+
+	private static double barycenter(List<Vertex> neighbours, int order) {
+		if (neighbours.isEmpty()) {
+			return order;
+		}
+		double sum = 0;
+		for (Vertex n : neighbours) {
+			sum += n.order;
+		}
+		return sum / neighbours.size();
+	}
+
+	/**
+	 * Sorts the layer by barycenter, each cluster as a whole at the mean
+	 * barycenter of its vertices in the layer, so that it stays contiguous
+	 */
+	private void arrange(List<Vertex> layer) {
+		final Map<Box, double[]> means = new HashMap<Box, double[]>();
+		for (Vertex v : layer) {
+			for (Box box : v.path()) {
+				double[] mean = means.get(box);
+				if (mean == null) {
+					mean = new double[2];
+					means.put(box, mean);
+				}
+				mean[0] += v.bary;
+				mean[1]++;
+			}
+		}
+		Collections.sort(layer, new Comparator<Vertex>() {
+			public int compare(Vertex v1, Vertex v2) {
+				final List<Box> p1 = v1.path();
+				final List<Box> p2 = v2.path();
+				final int k = commonDepth(p1, p2);
+				final double key1 = k < p1.size() ? mean(means.get(p1.get(k))) : v1.bary;
+				final double key2 = k < p2.size() ? mean(means.get(p2.get(k))) : v2.bary;
+				final int compare = Double.compare(key1, key2);
+				if (compare != 0) {
+					return compare;
+				}
+				final int unit1 = k < p1.size() ? p1.get(k).index : clusters.size() + v1.index;
+				final int unit2 = k < p2.size() ? p2.get(k).index : clusters.size() + v2.index;
+				return Integer.compare(unit1, unit2);
+			}
+		});
+		for (int i = 0; i < layer.size(); i++) {
+			layer.get(i).order = i;
+		}
+	}
+
+	private static double mean(double[] mean) {
+		return mean[0] / mean[1];
+	}
+
+	private int[] snapshot() {
+		final int[] orders = new int[vertices.size()];
+		for (Vertex v : vertices) {
+			orders[v.index] = v.order;
+		}
+		return orders;
+	}
+
+	/**
+	 * @return The number of crossings between all the adjacent layers, each
+	 *         counted as inversions with a Fenwick tree
+	 */
+	private long crossings() {
+		long crossings = 0;
+		for (int l = 0; l + 1 < layers.size(); l++) {
+			final List<Vertex> upper = layers.get(l);
+			final int lowerSize = layers.get(l + 1).size();
+			final long[] tree = new long[lowerSize + 1];
+			long seen = 0;
+			for (Vertex v : upper) {
+				final int[] targets = new int[v.down.size()];
+				for (int i = 0; i < targets.length; i++) {
+					targets[i] = v.down.get(i).order;
+				}
+				Arrays.sort(targets);
+				for (int target : targets) {
+					// the edges seen so far ending right of this one
+					long notRight = 0;
+					for (int i = target + 1; i > 0; i -= i & -i) {
+						notRight += tree[i];
+					}
+					crossings += seen - notRight;
+				}
+				for (int target : targets) {
+					for (int i = target + 1; i <= lowerSize; i += i & -i) {
+						tree[i]++;
+					}
+					seen++;
+				}
+			}
+		}
+		return crossings;
+	}
+
+	private void place() {
+		double y = 0;
+		// room for the borders and labels of the nested clusters between two
+		// layers
+		final double layerGap = LAYER_GAP + maxDepth * (2 * CLUSTER_PADDING + (transposed ? 0 : lineHeight()));
+		for (List<Vertex> layer : layers) {
+			double h = 0;
+			for (Vertex v : layer) {
+				h = Math.max(h, v.h);
+			}
+			for (Vertex v : layer) {
+				v.y = y + h / 2;
+			}
+			y += h + layerGap;
+		}
+		for (List<Vertex> layer : layers) {
+			for (int i = 0; i < layer.size(); i++) {
+				layer.get(i).x = i == 0 ? 0 : layer.get(i - 1).x + separation(layer.get(i - 1), layer.get(i));
+			}
+		}
+		for (int r = 0; r < REFINEMENTS; r++) {
+			final boolean down = r % 2 == 0;
+			final boolean both = r == REFINEMENTS - 1;
+			for (int i = 0; i < layers.size(); i++) {
+				final List<Vertex> layer = layers.get(down ? i : layers.size() - 1 - i);
+				final double[] desired = new double[layer.size()];
+				for (int j = 0; j < desired.length; j++) {
+					final Vertex v = layer.get(j);
+					desired[j] = both ? mean(v.x, v.up, v.down) : mean(v.x, down ? v.up : v.down,
+							Collections.<Vertex> emptyList());
+				}
+				fit(layer, desired);
+			}
+		}
+	}
+
+	private static double mean(double x, List<Vertex> neighbours1, List<Vertex> neighbours2) {
+		final int count = neighbours1.size() + neighbours2.size();
+		if (count == 0) {
+			return x;
+		}
+		double sum = 0;
+		for (Vertex n : neighbours1) {
+			sum += n.x;
+		}
+		for (Vertex n : neighbours2) {
+			sum += n.x;
+		}
+		return sum / count;
+	}
+
+	/**
+	 * The positions closest to the desired ones, in the least squares sense,
+	 * that keep the order and the separations of the layer: an isotonic
+	 * regression by pool adjacent violators, on the desired positions minus
+	 * the cumulated separations
+	 */
+	private void fit(List<Vertex> layer, double[] desired) {
+		final int n = layer.size();
+		final double[] offsets = new double[n];
+		for (int i = 1; i < n; i++) {
+			offsets[i] = offsets[i - 1] + separation(layer.get(i - 1), layer.get(i));
+		}
+		final double[] sums = new double[n];
+		final int[] counts = new int[n];
+		int blocks = 0;
+		for (int i = 0; i < n; i++) {
+			sums[blocks] = desired[i] - offsets[i];
+			counts[blocks] = 1;
+			blocks++;
+			while (blocks > 1 && sums[blocks - 2] / counts[blocks - 2] > sums[blocks - 1] / counts[blocks - 1]) {
+				sums[blocks - 2] += sums[blocks - 1];
+				counts[blocks - 2] += counts[blocks - 1];
+				blocks--;
+			}
+		}
+		int i = 0;
+		for (int b = 0; b < blocks; b++) {
+			final double value = sums[b] / counts[b];
+			for (int j = 0; j < counts[b]; j++, i++) {
+				layer.get(i).x = value + offsets[i];
+			}
+		}
+	}
+
+	private double separation(Vertex a, Vertex b) {
+		final List<Box> pa = a.path();
+		final List<Box> pb = b.path();
+		final int boundaries = pa.size() + pb.size() - 2 * commonDepth(pa, pb);
+		final double gap = a.dummy && b.dummy ? NODE_GAP / 2 : NODE_GAP;
+		return a.w / 2 + b.w / 2 + gap + boundaries * (CLUSTER_PADDING + (transposed ? lineHeight() : 0));
+	}
+
+	private static double lineHeight() {
+		return DEFAULT_FONT_SIZE * 1.25;
+	}
+
+	/**
+	 * The routes, from the source to the target through the dummies, or a
+	 * loop on the right of the node
+	 */
+	private void route() {
+		for (Edge edge : edges) {
+			if (edge.isLoop()) {
+				final Vertex v = edge.source;
+				final double x = v.x + v.w / 2;
+				final double dy = v.h / 4;
+				edge.points = new double[][] { { x, v.y - dy }, { x + LOOP_SIZE, v.y - dy - LOOP_SIZE / 2 },
+						{ x + LOOP_SIZE, v.y + dy + LOOP_SIZE / 2 }, { x, v.y + dy } };
+				edge.curved = true;
+				edge.labelX = x + LOOP_SIZE + 4;
+				edge.labelY = v.y;
+				continue;
+			}
+			final List<Vertex> chain = edge.chain;
+			final double[][] points = new double[chain.size()][];
+			for (int i = 0; i < chain.size(); i++) {
+				final Vertex v = chain.get(i);
+				final double dy = i == 0 ? v.h / 2 : i == chain.size() - 1 ? -v.h / 2 : 0;
+				points[i] = new double[] { v.x, v.y + dy };
+			}
+			if (edge.reversed) {
+				Collections.reverse(Arrays.asList(points));
+			}
+			edge.points = points;
+			final Vertex at = edge.labelVertex;
+			if (at != null) {
+				edge.labelX = at.x + 4;
+				edge.labelY = at.y;
+			}
+		}
+	}
+
+	/**
+	 * Transposes the layout from top to bottom into left to right, and flips
+	 * it for the bottom to top or right to left directions
+	 */
+	private void transform() {
+		final boolean flip = direction.equals("BT") || direction.equals("RL");
+		if (!transposed && !flip) {
+			return;
+		}
+		for (Vertex v : vertices) {
+			if (transposed) {
+				v.transpose();
+			}
+			final double[] center = { v.x, v.y };
+			transform(center, flip);
+			v.x = center[0];
+			v.y = center[1];
+		}
+		for (Edge edge : edges) {
+			for (double[] point : edge.points) {
+				transform(point, flip);
+			}
+			final double[] label = { edge.labelX, edge.labelY };
+			transform(label, flip);
+			edge.labelX = label[0];
+			edge.labelY = label[1];
+		}
+	}
+
+	private void transform(double[] point, boolean flip) {
+		if (transposed) {
+			final double x = point[0];
+			point[0] = point[1];
+			point[1] = x;
+			if (flip) {
+				point[0] = -point[0];
+			}
+		} else if (flip) {
+			point[1] = -point[1];
+		}
+	}
+
+	/**
+	 * Computes the boxes of the clusters, inner ones first, then shifts
+	 * everything to the margins, under the title
+	 */
+	private void frame() {
+		for (Box box : clusters) {
+			box.x0 = box.y0 = Double.MAX_VALUE;
+			box.x1 = box.y1 = -Double.MAX_VALUE;
+		}
+		for (Vertex v : vertices) {
+			if (!v.dummy && v.cluster != null) {
+				v.cluster.include(v.x - v.w / 2, v.y - v.h / 2, v.x + v.w / 2, v.y + v.h / 2);
+			}
+		}
+		for (int i = clusters.size() - 1; i >= 0; i--) {
+			final Box box = clusters.get(i);
+			if (box.isEmpty()) {
+				continue;
+			}
+			box.x0 -= CLUSTER_PADDING;
+			box.x1 += CLUSTER_PADDING;
+			box.y0 -= CLUSTER_PADDING + box.lines.size() * lineHeight();
+			box.y1 += CLUSTER_PADDING;
+			if (box.parent != null) {
+				box.parent.include(box.x0, box.y0, box.x1, box.y1);
+			}
+		}
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		for (Vertex v : vertices) {
+			if (!v.dummy) {
+				minX = Math.min(minX, v.x - v.w / 2);
+				minY = Math.min(minY, v.y - v.h / 2);
+				maxX = Math.max(maxX, v.x + v.w / 2);
+				maxY = Math.max(maxY, v.y + v.h / 2);
+			}
+		}
+		for (Box box : clusters) {
+			if (!box.isEmpty()) {
+				minX = Math.min(minX, box.x0);
+				minY = Math.min(minY, box.y0);
+				maxX = Math.max(maxX, box.x1);
+				maxY = Math.max(maxY, box.y1);
+			}
+		}
+		for (Edge edge : edges) {
+			for (double[] point : edge.points) {
+				minX = Math.min(minX, point[0]);
+				minY = Math.min(minY, point[1]);
+				maxX = Math.max(maxX, point[0]);
+				maxY = Math.max(maxY, point[1]);
+			}
+			if (edge.label != null) {
+				maxX = Math.max(maxX, edge.labelX + edge.labelWidth());
+				maxY = Math.max(maxY, edge.labelY + edge.labelHeight() / 2);
+			}
+		}
+		if (minX > maxX) {
+			minX = minY = maxX = maxY = 0;
+		}
+		final double titleHeight = title == null ? 0 : TITLE_FONT_SIZE * 1.5;
+		final double dx = MARGIN - minX;
+		final double dy = MARGIN + titleHeight - minY;
+		for (Vertex v : vertices) {
+			v.x += dx;
+			v.y += dy;
+		}
+		for (Box box : clusters) {
+			box.x0 += dx;
+			box.x1 += dx;
+			box.y0 += dy;
+			box.y1 += dy;
+		}
+		for (Edge edge : edges) {
+			for (double[] point : edge.points) {
+				point[0] += dx;
+				point[1] += dy;
+			}
+			edge.labelX += dx;
+			edge.labelY += dy;
+		}
+		width = maxX - minX + 2 * MARGIN;
+		if (title != null) {
+			width = Math.max(width, textWidth(title, TITLE_FONT_SIZE) + 2 * MARGIN);
+		}
+		height = maxY - minY + 2 * MARGIN + titleHeight;
+	}
+
+	/**
+	 * @return The lines of a label followed by its stereotypes, wrapped as
+	 *         the label of a node in dot
+	 */
+	private List<String> lines(String label, Collection<String> stereotypes) {
+		final String wrapped = labelFormatter.format(label, stereotypes, LABEL_WIDTH);
+		final List<String> lines = new ArrayList<String>();
+		for (String line : wrapped.split("\\\\[ln] ?")) {
+			// the escapes of the dot records, such as \<
+			lines.add(line.replaceAll("\\\\(.)", "$1"));
+		}
+		return lines;
+	}
+
+	static double textWidth(String text, double fontSize) {
+		return text.length() * fontSize * 0.6;
+	}
+
+	/**
+	 * @return The options key=value of a dot attribute list, unquoted
+	 */
+	static Map<String, String> options(String options) {
+		if (options == null || options.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		final Map<String, String> map = new LinkedHashMap<String, String>();
+		final Deque<String> tokens = new ArrayDeque<String>();
+		final StringBuilder token = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < options.length(); i++) {
+			final char c = options.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && (c == ',' || c == ';')) {
+				tokens.add(token.toString());
+				token.setLength(0);
+			} else {
+				token.append(c);
+			}
+		}
+		tokens.add(token.toString());
+		for (String pair : tokens) {
+			final int equals = pair.indexOf('=');
+			if (equals > 0) {
+				map.put(pair.substring(0, equals).trim(), pair.substring(equals + 1).trim());
+			}
+		}
+		return map;
+	}
+
+	static double fontSize(Map<String, String> options) {
+		final String size = options.get("fontsize");
+		if (size != null) {
+			try {
+				return Double.parseDouble(size);
+			} catch (NumberFormatException e) {
+				// the default then
+			}
+		}
+		return DEFAULT_FONT_SIZE;
+	}
+
+	/**
+	 * A node, or a dummy vertex on a long edge, with its center and size
+	 */
+	static final class Vertex {
+
+		final int index;
+
+		final String id;
+
+		final List<String> lines;
+
+		final Map<String, String> options;
+
+		final Box cluster;
+
+		final boolean dummy;
+
+		final double fontSize;
+
+		final List<Vertex> up = new ArrayList<Vertex>(2);
+
+		final List<Vertex> down = new ArrayList<Vertex>(2);
+
+		double x;
+
+		double y;
+
+		double w;
+
+		double h;
+
+		int layer;
+
+		int order;
+
+		double bary;
+
+		Vertex(int index, String id, List<String> lines, Map<String, String> options, Box cluster, boolean dummy) {
+			this.index = index;
+			this.id = id;
+			this.lines = lines;
+			this.options = options;
+			this.cluster = cluster;
+			this.dummy = dummy;
+			this.fontSize = fontSize(options);
+			if (dummy) {
+				w = 2;
+				h = 2;
+				return;
+			}
+			double textWidth = 0;
+			for (String line : lines) {
+				textWidth = Math.max(textWidth, textWidth(line, fontSize));
+			}
+			w = Math.max(textWidth + fontSize * 1.6, fontSize * 4);
+			h = lines.size() * fontSize * 1.25 + fontSize;
+			if ("ellipse".equals(options.get("shape"))) {
+				w *= 1.4;
+				h *= 1.4;
+			}
+		}
+
+		List<Box> path() {
+			return cluster == null ? Collections.<Box> emptyList() : cluster.path;
+		}
+
+		void transpose() {
+			final double width = w;
+			w = h;
+			h = width;
+		}
+
+		public String toString() {
+			return "Vertex " + (dummy ? "dummy" : id) + " layer=" + layer + " order=" + order;
+		}
+	}
+
+	/**
+	 * An association, with its route from the source to the target
+	 */
+	static final class Edge {
+
+		final Vertex source;
+
+		final Vertex target;
+
+		final String label;
+
+		final Map<String, String> options;
+
+		final List<Vertex> chain = new ArrayList<Vertex>();
+
+		boolean reversed;
+
+		Vertex labelVertex;
+
+		double[][] points;
+
+		// a cubic Bezier curve rather than a polyline
+		boolean curved;
+
+		double labelX;
+
+		double labelY;
+
+		Edge(Vertex source, Vertex target, String label, Map<String, String> options) {
+			this.source = source;
+			this.target = target;
+			this.label = label;
+			this.options = options;
+		}
+
+		boolean isLoop() {
+			return source == target;
+		}
+
+		Vertex upper() {
+			return reversed ? target : source;
+		}
+
+		Vertex lower() {
+			return reversed ? source : target;
+		}
+
+		int span() {
+			return label == null ? 1 : 2;
+		}
+
+		double fontSize() {
+			return LayeredLayout.fontSize(options);
+		}
+
+		double labelWidth() {
+			return label == null ? 0 : textWidth(label, fontSize());
+		}
+
+		double labelHeight() {
+			return label == null ? 0 : fontSize() * 1.25;
+		}
+
+		public String toString() {
+			return "Edge from " + source.id + " to " + target.id;
+		}
+	}
+
+	/**
+	 * A cluster, with its box around its nodes and inner clusters
+	 */
+	static final class Box {
+
+		final int index;
+
+		final String id;
+
+		final List<String> lines;
+
+		final Map<String, String> options;
+
+		final Box parent;
+
+		// the clusters from the outermost to this one
+		final List<Box> path;
+
+		double x0;
+
+		double y0;
+
+		double x1;
+
+		double y1;
+
+		Box(int index, String id, List<String> lines, Map<String, String> options, Box parent) {
+			this.index = index;
+			this.id = id;
+			this.lines = lines;
+			this.options = options;
+			this.parent = parent;
+			final List<Box> path = new ArrayList<Box>(parent == null ? 1 : parent.path.size() + 1);
+			if (parent != null) {
+				path.addAll(parent.path);
+			}
+			path.add(this);
+			this.path = path;
+		}
+
+		void include(double left, double top, double right, double bottom) {
+			x0 = Math.min(x0, left);
+			y0 = Math.min(y0, top);
+			x1 = Math.max(x1, right);
+			y1 = Math.max(y1, bottom);
+		}
+
+		boolean isEmpty() {
+			return x0 > x1;
+		}
+
+		public String toString() {
+			return "Box " + id;
+		}
+	}
+}
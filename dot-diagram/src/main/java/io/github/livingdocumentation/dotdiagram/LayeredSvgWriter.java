@@ -0,0 +1,321 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Box;
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Edge;
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Vertex;
+
+/**
+ * Renders DotGraph models into SVG in-process, with a layered layout in pure
+ * Java instead of Graphviz, for the environments where dot cannot run; no dot
+ * text is generated, hence dot files or contents cannot be rendered.
+ *
+ * The layout is that of dot in spirit, not in every detail: the nodes are
+ * boxes or ellipses, and the common node, edge and style options are
+ * honoured (shape, style, color, fillcolor, fontcolor, fontname, fontsize,
+ * arrowhead, arrowtail, dir).
+ */
+public final class LayeredSvgWriter extends AbstractDotWriter {
+
+	private static final String NEWLINE = "\n";
+
+	private static final String DEFAULT_FONT = "Verdana";
+
+	private static final double LINE_HEIGHT = 1.25;
+
+	private final String path;
+
+	/**
+	 * @param path
+	 *            The path to the svg files, must end with a slash
+	 */
+	public LayeredSvgWriter(String path) {
+		this.path = path;
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public String getImageExtension() {
+		return ".svg";
+	}
+
+	/**
+	 * Not supported, as there is no parser of dot files
+	 */
+	@Override
+	public void render(String filename) {
+		throw new DotDiagramException("The layered layout renders DotGraph models, not dot files: " + filename
+				+ ".dot");
+	}
+
+	/**
+	 * Not supported, as there is no parser of dot text; fails before writing
+	 * any dot file
+	 */
+	@Override
+	public String toImage(String filename, String content) {
+		throw new DotDiagramException("The layered layout renders DotGraph models, not dot text: " + filename);
+	}
+
+	/**
+	 * Lays out the given DotGraph and writes its SVG image, without any dot
+	 * file
+	 *
+	 * @return The filename of the SVG image
+	 */
+	@Override
+	public String toImage(String filename, Renderable content) throws IOException {
+		if (!(content instanceof DotGraph)) {
+			throw new DotDiagramException("The layered layout renders DotGraph models only: " + content);
+		}
+		final DotMetricsListener listener = getMetricsListener();
+		final long start = listener == DotMetricsListener.NONE ? 0 : System.nanoTime();
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path + filename
+				+ getImageExtension()), StandardCharsets.UTF_8))) {
+			toSvg((DotGraph) content, out);
+		}
+		if (listener != DotMetricsListener.NONE) {
+			listener.imageRendered(filename, 0, System.nanoTime() - start, 0);
+		}
+		return filename + getImageExtension();
+	}
+
+	public String toSvg(DotGraph graph) {
+		return DotRenderer.toString(out -> toSvg(graph, out));
+	}
+
+	public void toSvg(DotGraph graph, Appendable out) throws IOException {
+		final LayeredLayout layout = new LayeredLayout(graph);
+		out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>").append(NEWLINE);
+		out.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(number(layout.width));
+		out.append("\" height=\"").append(number(layout.height)).append("\" viewBox=\"0 0 ");
+		out.append(number(layout.width)).append(' ').append(number(layout.height)).append("\">").append(NEWLINE);
+		markers(out);
+		if (layout.title != null) {
+			out.append("<title>");
+			escape(out, layout.title);
+			out.append("</title>").append(NEWLINE);
+			text(out, layout.title, layout.width / 2, LayeredLayout.MARGIN + LayeredLayout.TITLE_FONT_SIZE,
+					"middle", DEFAULT_FONT, LayeredLayout.TITLE_FONT_SIZE, null);
+		}
+		for (Box box : layout.clusters) {
+			if (!box.isEmpty()) {
+				cluster(out, box);
+			}
+		}
+		for (Edge edge : layout.edges) {
+			edge(out, edge);
+		}
+		for (Vertex vertex : layout.vertices) {
+			if (!vertex.dummy) {
+				node(out, vertex);
+			}
+		}
+		out.append("</svg>").append(NEWLINE);
+	}
+
+	private static void markers(Appendable out) throws IOException {
+		out.append("<defs>").append(NEWLINE);
+		marker(out, "normal", "<path d=\"M0,0 L10,5 L0,10 z\" fill=\"context-stroke\"/>");
+		marker(out, "empty", "<path d=\"M0,0 L10,5 L0,10 z\" fill=\"white\" stroke=\"context-stroke\"/>");
+		marker(out, "open", "<path d=\"M0,0 L10,5 L0,10\" fill=\"none\" stroke=\"context-stroke\"/>");
+		out.append("</defs>").append(NEWLINE);
+	}
+
+	private static void marker(Appendable out, String id, String shape) throws IOException {
+		out.append("<marker id=\"").append(id).append("\" viewBox=\"0 0 10 10\" refX=\"10\" refY=\"5\"");
+		out.append(" markerWidth=\"8\" markerHeight=\"8\" orient=\"auto-start-reverse\">").append(shape);
+		out.append("</marker>").append(NEWLINE);
+	}
+
+	private static void cluster(Appendable out, Box box) throws IOException {
+		final Map<String, String> options = box.options;
+		final double fontSize = LayeredLayout.fontSize(options);
+		out.append("<g class=\"cluster\"><title>");
+		escape(out, box.id);
+		out.append("</title>");
+		out.append("<rect x=\"").append(number(box.x0)).append("\" y=\"").append(number(box.y0));
+		out.append("\" width=\"").append(number(box.x1 - box.x0)).append("\" height=\"");
+		out.append(number(box.y1 - box.y0)).append('"');
+		shapeStyle(out, options);
+		out.append("/>").append(NEWLINE);
+		lines(out, box.lines, (box.x0 + box.x1) / 2, box.y0 + 4 + fontSize, options, fontSize);
+		out.append("</g>").append(NEWLINE);
+	}
+
+	private static void edge(Appendable out, Edge edge) throws IOException {
+		final Map<String, String> options = edge.options;
+		out.append("<g class=\"edge\"><title>");
+		escape(out, edge.source.id + "->" + edge.target.id);
+		out.append("</title>");
+		out.append("<path d=\"");
+		final double[][] points = edge.points;
+		for (int i = 0; i < points.length; i++) {
+			if (i == 0) {
+				out.append('M');
+			} else if (edge.curved) {
+				out.append(i == 1 ? " C" : " ");
+			} else {
+				out.append(" L");
+			}
+			out.append(number(points[i][0])).append(',').append(number(points[i][1]));
+		}
+		out.append("\" fill=\"none\" stroke=\"").append(attribute(options.getOrDefault("color", "black")));
+		out.append('"');
+		dashes(out, options.get("style"));
+		final String dir = options.getOrDefault("dir", "forward");
+		if (dir.equals("forward") || dir.equals("both")) {
+			arrow(out, "marker-end", options.get("arrowhead"));
+		}
+		if (dir.equals("back") || dir.equals("both")) {
+			arrow(out, "marker-start", options.get("arrowtail"));
+		}
+		out.append("/>");
+		if (edge.label != null) {
+			out.append(NEWLINE);
+			final double fontSize = edge.fontSize();
+			text(out, edge.label, edge.labelX, edge.labelY + fontSize / 3, "start", font(options), fontSize,
+					options.get("fontcolor"));
+		}
+		out.append("</g>").append(NEWLINE);
+	}
+
+	private static void arrow(Appendable out, String marker, String arrow) throws IOException {
+		if ("none".equals(arrow)) {
+			return;
+		}
+		final String id = "open".equals(arrow) || "empty".equals(arrow) ? arrow : "normal";
+		out.append(' ').append(marker).append("=\"url(#").append(id).append(")\"");
+	}
+
+	private static void node(Appendable out, Vertex vertex) throws IOException {
+		final Map<String, String> options = vertex.options;
+		out.append("<g class=\"node\"><title>");
+		escape(out, vertex.id);
+		out.append("</title>");
+		final String shape = options.getOrDefault("shape", "record");
+		if (shape.equals("ellipse") || shape.equals("oval") || shape.equals("circle")) {
+			out.append("<ellipse cx=\"").append(number(vertex.x)).append("\" cy=\"").append(number(vertex.y));
+			out.append("\" rx=\"").append(number(vertex.w / 2)).append("\" ry=\"").append(number(vertex.h / 2));
+			out.append('"');
+			shapeStyle(out, options);
+			out.append("/>");
+		} else if (!shape.equals("plaintext") && !shape.equals("plain") && !shape.equals("none")) {
+			out.append("<rect x=\"").append(number(vertex.x - vertex.w / 2)).append("\" y=\"");
+			out.append(number(vertex.y - vertex.h / 2)).append("\" width=\"").append(number(vertex.w));
+			out.append("\" height=\"").append(number(vertex.h)).append('"');
+			if (options.getOrDefault("style", "").contains("rounded")) {
+				out.append(" rx=\"4\"");
+			}
+			shapeStyle(out, options);
+			out.append("/>");
+		}
+		out.append(NEWLINE);
+		final double fontSize = vertex.fontSize;
+		final double top = vertex.y - vertex.lines.size() * fontSize * LINE_HEIGHT / 2;
+		lines(out, vertex.lines, vertex.x, top + fontSize, options, fontSize);
+		out.append("</g>").append(NEWLINE);
+	}
+
+	private static void shapeStyle(Appendable out, Map<String, String> options) throws IOException {
+		final String style = options.getOrDefault("style", "");
+		final String color = options.getOrDefault("color", "black");
+		final String fill = style.contains("filled") ? options.getOrDefault("fillcolor", options.getOrDefault(
+				"color", "lightgrey")) : "none";
+		out.append(" fill=\"").append(attribute(fill)).append("\" stroke=\"").append(attribute(color)).append('"');
+		dashes(out, style);
+	}
+
+	private static void dashes(Appendable out, String style) throws IOException {
+		if (style == null) {
+			return;
+		}
+		if (style.contains("dashed")) {
+			out.append(" stroke-dasharray=\"5,2\"");
+		} else if (style.contains("dotted")) {
+			out.append(" stroke-dasharray=\"1,2\"");
+		}
+	}
+
+	private static void lines(Appendable out, List<String> lines, double x, double baseline,
+			Map<String, String> options, double fontSize) throws IOException {
+		for (int i = 0; i < lines.size(); i++) {
+			text(out, lines.get(i), x, baseline + i * fontSize * LINE_HEIGHT, "middle", font(options), fontSize,
+					options.get("fontcolor"));
+			out.append(NEWLINE);
+		}
+	}
+
+	private static void text(Appendable out, String text, double x, double y, String anchor, String font,
+			double fontSize, String color) throws IOException {
+		out.append("<text x=\"").append(number(x)).append("\" y=\"").append(number(y));
+		out.append("\" text-anchor=\"").append(anchor).append("\" font-family=\"").append(attribute(font));
+		out.append("\" font-size=\"").append(number(fontSize)).append('"');
+		if (color != null) {
+			out.append(" fill=\"").append(attribute(color)).append('"');
+		}
+		out.append('>');
+		escape(out, text);
+		out.append("</text>");
+	}
+
+	private static String font(Map<String, String> options) {
+		return options.getOrDefault("fontname", DEFAULT_FONT);
+	}
+
+	/**
+	 * @return The number with at most one decimal
+	 */
+	static String number(double value) {
+		final long tenths = Math.round(value * 10);
+		return tenths % 10 == 0 ? Long.toString(tenths / 10) : Double.toString(tenths / 10.0);
+	}
+
+	private static String attribute(String value) {
+		final StringBuilder sb = new StringBuilder(value.length());
+		try {
+			escape(sb, value);
+		} catch (IOException e) {
+			throw new DotDiagramException("Cannot happen with a StringBuilder", e);
+		}
+		return sb.toString();
+	}
+
+	private static void escape(Appendable out, String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				out.append("&amp;");
+				break;
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+	}
+
+	public String toString() {
+		return "LayeredSvgWriter path=" + path + " imageExtension=" + getImageExtension();
+	}
+}
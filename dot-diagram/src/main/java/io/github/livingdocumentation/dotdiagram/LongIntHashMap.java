@@ -0,0 +1,93 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing (linear probing) map from primitive long keys to positive
+ * int values, without any boxing nor entry object; -1 stands for no value
+ */
+final class LongIntHashMap {
+
+	private long[] keys;
+
+	private int[] values;
+
+	private int size = 0;
+
+	LongIntHashMap() {
+		this(16);
+	}
+
+	LongIntHashMap(int expectedSize) {
+		final int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The value for the given key, or -1 if none
+	 */
+	public int get(long key) {
+		final int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			final int value = values[i];
+			if (value == -1 || keys[i] == key) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * @return The existing value for the given key if any, otherwise the given
+	 *         value once associated to the key
+	 */
+	public int getOrPut(long key, int value) {
+		final int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != -1; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			rehash(keys.length << 1);
+		}
+		return value;
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, -1);
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != -1) {
+				int i = hash(oldKeys[j]) & mask;
+				while (values[i] != -1) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) (h ^ (h >>> 16));
+	}
+
+	public String toString() {
+		return "LongIntHashMap: " + size + " entries";
+	}
+}
@@ -0,0 +1,131 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * A temporary file that only grows, accessed through memory-mapped chunks that
+ * are mapped on first access, so that its content lives in the page cache and
+ * not on the heap; values are read and written at their byte position, which
+ * must be aligned on their size: as allocations are rounded up to 4 bytes, an
+ * int or char at an aligned offset within an allocation never spans two
+ * chunks
+ */
+final class MappedFile implements Closeable {
+
+	static final int CHUNK_BITS = 26;
+
+	private final int chunkBits;
+
+	private final long chunkSize;
+
+	private final int chunkMask;
+
+	private final File file;
+
+	private final RandomAccessFile access;
+
+	private final FileChannel channel;
+
+	// false where an open file cannot be deleted, until closed
+	private final boolean unlinked;
+
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[4];
+
+	private long size = 0;
+
+	public MappedFile(File directory, String prefix) throws IOException {
+		this(directory, prefix, CHUNK_BITS);
+	}
+
+	/**
+	 * @param chunkBits
+	 *            The log2 of the size of the mapped chunks, at least 2
+	 */
+	MappedFile(File directory, String prefix, int chunkBits) throws IOException {
+		if (chunkBits < 2 || chunkBits > 30) {
+			throw new IllegalArgumentException("Chunk bits must be between 2 and 30: " + chunkBits);
+		}
+		this.chunkBits = chunkBits;
+		this.chunkSize = 1L << chunkBits;
+		this.chunkMask = (int) chunkSize - 1;
+		file = File.createTempFile(prefix, ".spill", directory);
+		access = new RandomAccessFile(file, "rw");
+		channel = access.getChannel();
+		// unlinked at once where possible, so that nothing is left behind
+		// even if never closed, the mappings keeping the content
+		unlinked = file.delete();
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return The position, aligned on 4 bytes, of the given number of bytes
+	 *         appended at the end of the file
+	 */
+	public long allocate(long bytes) {
+		final long position = size;
+		size += (bytes + 3) & ~3L;
+		return position;
+	}
+
+	public int getInt(long position) {
+		return chunk(position).getInt((int) position & chunkMask);
+	}
+
+	public void putInt(long position, int value) {
+		chunk(position).putInt((int) position & chunkMask, value);
+	}
+
+	public char getChar(long position) {
+		return chunk(position).getChar((int) position & chunkMask);
+	}
+
+	public void putChar(long position, char value) {
+		chunk(position).putChar((int) position & chunkMask, value);
+	}
+
+	private MappedByteBuffer chunk(long position) {
+		final int index = (int) (position >>> chunkBits);
+		if (index >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(index + 1, chunks.length * 2));
+		}
+		MappedByteBuffer chunk = chunks[index];
+		if (chunk == null) {
+			try {
+				chunk = channel.map(MapMode.READ_WRITE, index * chunkSize, chunkSize);
+			} catch (IOException e) {
+				throw new DotDiagramException("Could not map " + file + " at " + position, e);
+			}
+			chunks[index] = chunk;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Closes the file, and deletes it unless already unlinked; the mapped
+	 * chunks are released once garbage collected
+	 */
+	public void close() throws IOException {
+		chunks = new MappedByteBuffer[0];
+		try {
+			access.close();
+		} finally {
+			if (!unlinked) {
+				file.delete();
+			}
+		}
+	}
+
+	public String toString() {
+		return "MappedFile " + file + ": " + size + " bytes";
+	}
+}
@@ -0,0 +1,99 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing (linear probing) map from Object keys to positive int
+ * values, without any boxing nor entry object; -1 stands for no value
+ */
+final class ObjectIntHashMap {
+
+	private static final Object NULL_KEY = new Object();
+
+	private Object[] keys;
+
+	private int[] values;
+
+	private int size = 0;
+
+	ObjectIntHashMap() {
+		this(16);
+	}
+
+	ObjectIntHashMap(int expectedSize) {
+		final int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new Object[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The value for the given key, or -1 if none
+	 */
+	public int get(Object key) {
+		final Object k = key == null ? NULL_KEY : key;
+		final int mask = keys.length - 1;
+		for (int i = hash(k) & mask;; i = (i + 1) & mask) {
+			final int value = values[i];
+			if (value == -1) {
+				return -1;
+			}
+			if (k.equals(keys[i])) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * @return The existing value for the given key if any, otherwise the given
+	 *         value once associated to the key
+	 */
+	public int getOrPut(Object key, int value) {
+		final Object k = key == null ? NULL_KEY : key;
+		final int mask = keys.length - 1;
+		int i = hash(k) & mask;
+		for (; values[i] != -1; i = (i + 1) & mask) {
+			if (k.equals(keys[i])) {
+				return values[i];
+			}
+		}
+		keys[i] = k;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			rehash(keys.length << 1);
+		}
+		return value;
+	}
+
+	private void rehash(int capacity) {
+		final Object[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new Object[capacity];
+		values = new int[capacity];
+		Arrays.fill(values, -1);
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != -1) {
+				int i = hash(oldKeys[j]) & mask;
+				while (values[i] != -1) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int hash(Object key) {
+		final int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	public String toString() {
+		return "ObjectIntHashMap: " + size + " entries";
+	}
+}
@@ -0,0 +1,110 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+
+/**
+ * Renders a list of sibling nodes as fork-join tasks: the siblings are cut
+ * into consecutive chunks of about the parallel threshold in weight, each chunk
+ * is rendered into its own buffer, then the buffers are appended in order, so
+ * that the output is exactly the same as rendering the siblings one after
+ * another. A large cluster is a chunk of its own, and splits its own nodes in
+ * turn.
+ */
+final class ParallelRendering {
+
+	private ParallelRendering() {
+	}
+
+	/**
+	 * @return true if the given siblings are worth rendering in parallel
+	 */
+	public static boolean isWorthIt(AbstractNode[] nodes, int size, RenderOptions options) {
+		if (!options.isParallel() || size < 2) {
+			return false;
+		}
+		int weight = 0;
+		for (int i = 0; i < size; i++) {
+			weight += nodes[i].weight();
+			if (weight >= options.getParallelThreshold()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void render(Appendable out, AbstractNode[] nodes, int size, RenderOptions options)
+			throws IOException {
+		final List<ChunkTask> chunks = new ArrayList<ChunkTask>();
+		int from = 0;
+		int weight = 0;
+		for (int i = 0; i < size; i++) {
+			weight += nodes[i].weight();
+			if (weight >= options.getParallelThreshold()) {
+				chunks.add(new ChunkTask(nodes, from, i + 1, options));
+				from = i + 1;
+				weight = 0;
+			}
+		}
+		if (from < size) {
+			chunks.add(new ChunkTask(nodes, from, size, options));
+		}
+
+		final RecursiveAction all = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				ForkJoinTask.invokeAll(chunks);
+			}
+		};
+		if (ForkJoinTask.inForkJoinPool()) {
+			all.invoke();
+		} else {
+			options.getPool().invoke(all);
+		}
+
+		for (ChunkTask chunk : chunks) {
+			out.append(chunk.fragment);
+		}
+	}
+
+	private static final class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AbstractNode[] nodes;
+
+		private final int from;
+
+		private final int to;
+
+		private final RenderOptions options;
+
+		private StringBuilder fragment;
+
+		ChunkTask(AbstractNode[] nodes, int from, int to, RenderOptions options) {
+			this.nodes = nodes;
+			this.from = from;
+			this.to = to;
+			this.options = options;
+		}
+
+		protected void compute() {
+			final StringBuilder sb = new StringBuilder();
+			try {
+				for (int i = from; i < to; i++) {
+					nodes[i].render(sb, options);
+				}
+			} catch (IOException e) {
+				// cannot happen with a StringBuilder
+				throw new DotDiagramException("Errors rendering into memory", e);
+			}
+			fragment = sb;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.kevinsawicki.http.HttpRequest;
+import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
+
+/**
+ * Renders by POSTing the dot content, gzipped, to a Graphviz-compatible HTTP
+ * endpoint, such as https://kroki.io/graphviz/{0}, where {0} is replaced by
+ * the format of the image (the image extension without its dot).
+ *
+ * The connections are kept alive and reused between requests, each response
+ * being read entirely; the number of concurrent requests is bounded, and the
+ * requests failing on an I/O error or with a 429 or 5xx status are retried
+ * with an exponential backoff.
+ */
+public final class RemoteDotWriter extends AbstractDotWriter {
+
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	public static final long DEFAULT_BACKOFF_MILLIS = 200;
+
+	private static final long MAX_BACKOFF_MILLIS = 10000;
+
+	private static final int TIMEOUT_MILLIS = 60000;
+
+	private static final String CONTENT_TYPE = "text/vnd.graphviz";
+
+	private final String path;
+
+	private final String endpoint;
+
+	private final String imageExtension;
+
+	private final int maxConcurrentRequests;
+
+	private final int maxRetries;
+
+	private final long backoffMillis;
+
+	private final Semaphore requests;
+
+	/**
+	 * Constructor from the config properties: outpath, endpoint,
+	 * imageextension, and optionally maxconcurrentrequests, maxretries and
+	 * backoffmillis
+	 */
+	public RemoteDotWriter(Properties prop) {
+		this(prop.getProperty("outpath"), prop.getProperty("endpoint"), prop.getProperty("imageextension"), Integer
+				.parseInt(prop.getProperty("maxconcurrentrequests", String.valueOf(DEFAULT_MAX_CONCURRENT_REQUESTS))),
+				Integer.parseInt(prop.getProperty("maxretries", String.valueOf(DEFAULT_MAX_RETRIES))), Long
+						.parseLong(prop.getProperty("backoffmillis", String.valueOf(DEFAULT_BACKOFF_MILLIS))));
+	}
+
+	public RemoteDotWriter(String path, String endpoint, String imageExtension) {
+		this(path, endpoint, imageExtension, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_RETRIES,
+				DEFAULT_BACKOFF_MILLIS);
+	}
+
+	/**
+	 * @param path
+	 *            The path to dot and image files, must end with a slash
+	 * @param endpoint
+	 *            The URL to POST the dot content to, where {0} is replaced by
+	 *            the format of the image
+	 * @param imageExtension
+	 *            The image extension, e.g. ".svg"
+	 * @param maxRetries
+	 *            The number of retries of a failed request, 0 for none
+	 * @param backoffMillis
+	 *            The delay before the first retry, doubled for each next one
+	 */
+	public RemoteDotWriter(String path, String endpoint, String imageExtension, int maxConcurrentRequests,
+			int maxRetries, long backoffMillis) {
+		if (maxConcurrentRequests < 1 || maxRetries < 0 || backoffMillis < 0) {
+			throw new IllegalArgumentException("Invalid max concurrent requests, max retries or backoff: "
+					+ maxConcurrentRequests + ", " + maxRetries + ", " + backoffMillis);
+		}
+		this.path = path;
+		this.endpoint = endpoint;
+		this.imageExtension = imageExtension;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		this.maxRetries = maxRetries;
+		this.backoffMillis = backoffMillis;
+		this.requests = new Semaphore(maxConcurrentRequests, true);
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public String getImageExtension() {
+		return imageExtension;
+	}
+
+	@Override
+	protected String getRenderingKey() {
+		return super.getRenderingKey() + " " + endpoint;
+	}
+
+	/**
+	 * @return The URL of the endpoint, for the format of the image
+	 */
+	public String getUrl() {
+		return endpoint.replace("{0}", imageExtension.substring(imageExtension.lastIndexOf('.') + 1));
+	}
+
+	@Override
+	public void render(String filename) throws InterruptedException, IOException {
+		final byte[] dot = Files.readAllBytes(Paths.get(path + filename + ".dot"));
+		save(filename, post(dot, "ISO-8859-1", filename));
+	}
+
+	/**
+	 * Renders the content once, compact, into the dot file and posts that
+	 * same text, without reading the file back
+	 */
+	@Override
+	public String toImage(String filename, Renderable content) throws InterruptedException, IOException {
+		final String dot = writeCompact(filename, content);
+		save(filename, post(dot.getBytes(StandardCharsets.UTF_8), "UTF-8", filename));
+		return filename + imageExtension;
+	}
+
+	/**
+	 * @return The image of the given content, without any file
+	 */
+	public byte[] toImage(Renderable content) throws InterruptedException, IOException {
+		return post(compact(content), "UTF-8", null);
+	}
+
+	private static byte[] compact(Renderable content) {
+		return DotRenderer.toString(out -> content.render(out, RenderOptions.compact())).getBytes(
+				StandardCharsets.UTF_8);
+	}
+
+	private void save(String filename, byte[] image) throws IOException {
+		Files.write(Paths.get(path + filename + imageExtension), image);
+	}
+
+	private byte[] post(byte[] dot, String charset, String filename) throws InterruptedException, IOException {
+		final byte[] body = gzip(dot);
+		final String url = getUrl();
+		final DotMetricsListener listener = getMetricsListener();
+		final long start = listener == DotMetricsListener.NONE ? 0 : System.nanoTime();
+		int code = -1;
+		requests.acquire();
+		try {
+			for (int attempt = 0;; attempt++) {
+				try {
+					final HttpRequest request = HttpRequest.post(url).connectTimeout(TIMEOUT_MILLIS)
+							.readTimeout(TIMEOUT_MILLIS).contentType(CONTENT_TYPE, charset)
+							.header("Content-Encoding", "gzip").acceptGzipEncoding().uncompress(true).send(body);
+					code = request.code();
+					// read entirely, so that the connection is kept alive
+					final byte[] response = request.bytes();
+					if (code >= 200 && code < 300) {
+						return response;
+					}
+					if (!isRetryable(code) || attempt >= maxRetries) {
+						throw new DotDiagramException("Errors calling Graphviz at " + url + ": HTTP " + code + " "
+								+ new String(response, StandardCharsets.UTF_8));
+					}
+				} catch (HttpRequestException e) {
+					code = -1;
+					if (attempt >= maxRetries) {
+						throw new DotDiagramException("Errors calling Graphviz at " + url, e.getCause());
+					}
+				}
+				Thread.sleep(backoff(attempt));
+			}
+		} finally {
+			requests.release();
+			if (listener != DotMetricsListener.NONE) {
+				listener.imageRendered(filename, 0, System.nanoTime() - start, code);
+			}
+		}
+	}
+
+	private static boolean isRetryable(int code) {
+		return code == 429 || code >= 500;
+	}
+
+	/**
+	 * @return The delay before the retry after the given attempt, doubled at
+	 *         each attempt, with a random jitter of up to half of it
+	 */
+	private long backoff(int attempt) {
+		final long delay = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, 20));
+		return delay - ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	public String toString() {
+		return "RemoteDotWriter path=" + path + " endpoint=" + endpoint + " imageExtension=" + imageExtension
+				+ " maxConcurrentRequests=" + maxConcurrentRequests + " maxRetries=" + maxRetries + " backoffMillis="
+				+ backoffMillis;
+	}
+}
@@ -0,0 +1,211 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The options to render a graph into the dot syntax; immutable, every
+ * <code>with...</code> method returns a modified copy
+ */
+public final class RenderOptions {
+
+	/**
+	 * The default number of elements (nodes and associations) under which a
+	 * part of the graph is not worth a parallel task of its own
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+	private static final RenderOptions DEFAULTS = new RenderOptions(false, DEFAULT_PARALLEL_THRESHOLD, null, false,
+			null, false, false, DotMetricsListener.NONE);
+
+	private final boolean parallel;
+
+	private final int parallelThreshold;
+
+	private final ForkJoinPool pool;
+
+	private final boolean fragmentCache;
+
+	private final LabelFormatter labelFormatter;
+
+	private final boolean styleClasses;
+
+	private final boolean compact;
+
+	private final DotMetricsListener metricsListener;
+
+	private RenderOptions(boolean parallel, int parallelThreshold, ForkJoinPool pool, boolean fragmentCache,
+			LabelFormatter labelFormatter, boolean styleClasses, boolean compact, DotMetricsListener metricsListener) {
+		this.parallel = parallel;
+		this.parallelThreshold = parallelThreshold;
+		this.pool = pool;
+		this.fragmentCache = fragmentCache;
+		this.labelFormatter = labelFormatter;
+		this.styleClasses = styleClasses;
+		this.compact = compact;
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * @return The options of the plain sequential rendering
+	 */
+	public static RenderOptions defaults() {
+		return DEFAULTS;
+	}
+
+	/**
+	 * @return The options to render the sibling clusters and chunks of nodes
+	 *         of large graphs as fork-join tasks, with the exact same output as
+	 *         the sequential rendering
+	 */
+	public static RenderOptions parallel() {
+		return DEFAULTS.withParallel(true);
+	}
+
+	/**
+	 * @return The options to keep the rendered fragment of every node, so that
+	 *         the next rendering only renders again the subtrees changed since
+	 */
+	public static RenderOptions fragmentCache() {
+		return DEFAULTS.withFragmentCache(true);
+	}
+
+	/**
+	 * @return The options to render each distinct node or edge options string
+	 *         once per digraph or cluster, as the default of an anonymous
+	 *         subgraph of the elements using it, instead of inline on every
+	 *         element
+	 */
+	public static RenderOptions styleClasses() {
+		return DEFAULTS.withStyleClasses(true);
+	}
+
+	/**
+	 * @return The options to render the minimal dot text, ready for transport
+	 *         or hashing: no comments, no header, no indentation nor newlines,
+	 *         and only the non-redundant defaults
+	 */
+	public static RenderOptions compact() {
+		return DEFAULTS.withCompact(true);
+	}
+
+	public RenderOptions withParallel(boolean parallel) {
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param parallelThreshold
+	 *            The number of elements (nodes and associations) under which a
+	 *            part of the graph is rendered sequentially
+	 */
+	public RenderOptions withParallelThreshold(int parallelThreshold) {
+		if (parallelThreshold < 1) {
+			throw new IllegalArgumentException("The parallel threshold must be positive: " + parallelThreshold);
+		}
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param pool
+	 *            The pool to run the parallel rendering, instead of the common
+	 *            pool
+	 */
+	public RenderOptions withPool(ForkJoinPool pool) {
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param fragmentCache
+	 *            true to keep the rendered fragment of every node until it
+	 *            changes, at the cost of the memory for these fragments
+	 */
+	public RenderOptions withFragmentCache(boolean fragmentCache) {
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param labelFormatter
+	 *            The formatter of the node labels, with its own cache, instead
+	 *            of the formatter of each graph
+	 */
+	public RenderOptions withLabelFormatter(LabelFormatter labelFormatter) {
+		if (labelFormatter == null) {
+			throw new IllegalArgumentException("The label formatter is required");
+		}
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param styleClasses
+	 *            true to group the elements by options, for a smaller output
+	 *            with the same meaning, though in a different order
+	 */
+	public RenderOptions withStyleClasses(boolean styleClasses) {
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	public RenderOptions withCompact(boolean compact) {
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	/**
+	 * @param metricsListener
+	 *            The listener to the renderings of the graphs, with their
+	 *            statistics, at the cost of a walk of each graph
+	 */
+	public RenderOptions withMetricsListener(DotMetricsListener metricsListener) {
+		if (metricsListener == null) {
+			throw new IllegalArgumentException("The metrics listener is required, NONE for none");
+		}
+		return new RenderOptions(parallel, parallelThreshold, pool, fragmentCache, labelFormatter, styleClasses,
+				compact, metricsListener);
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	public boolean isFragmentCache() {
+		return fragmentCache;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool == null ? ForkJoinPool.commonPool() : pool;
+	}
+
+	public boolean isStyleClasses() {
+		return styleClasses;
+	}
+
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * @return The formatter given, or null for the formatter of each graph,
+	 *         the shared one unless the graph has its own
+	 */
+	public LabelFormatter getLabelFormatter() {
+		return labelFormatter;
+	}
+
+	public DotMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	public String toString() {
+		return "RenderOptions parallel=" + parallel + " parallelThreshold=" + parallelThreshold + " fragmentCache="
+				+ fragmentCache + " styleClasses=" + styleClasses
+				+ " compact=" + compact;
+	}
+}
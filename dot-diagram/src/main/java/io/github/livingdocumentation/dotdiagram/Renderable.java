@@ -1,9 +1,27 @@
 package io.github.livingdocumentation.dotdiagram;
 
+import java.io.IOException;
+
 /**
  * Represents the trait of being renderable into textual format
  */
 public interface Renderable {
 
 	String render();
+
+	/**
+	 * Renders directly into the given sink, without building the whole text in
+	 * memory first
+	 */
+	default void render(Appendable out) throws IOException {
+		out.append(render());
+	}
+
+	/**
+	 * Renders directly into the given sink with the given options, as far as
+	 * supported
+	 */
+	default void render(Appendable out, RenderOptions renderOptions) throws IOException {
+		render(out);
+	}
 }
@@ -0,0 +1,91 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A budget of heap bytes shared by the columns of a graph, beyond which they
+ * spill into memory-mapped files of a temporary directory, deleted on close
+ */
+final class SpillStore implements Closeable {
+
+	private final File directory;
+
+	private final long threshold;
+
+	private final int chunkBits;
+
+	private final List<MappedFile> files = new ArrayList<MappedFile>();
+
+	private long heapBytes = 0;
+
+	public SpillStore(File directory, long threshold) {
+		this(directory, threshold, MappedFile.CHUNK_BITS);
+	}
+
+	/**
+	 * @param chunkBits
+	 *            The log2 of the size of the mapped chunks of the files
+	 */
+	SpillStore(File directory, long threshold, int chunkBits) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Spill threshold must be positive: " + threshold);
+		}
+		this.directory = directory;
+		this.threshold = threshold;
+		this.chunkBits = chunkBits;
+	}
+
+	/**
+	 * @return true if the given number of bytes may still be kept on the heap,
+	 *         in which case they are taken from the budget
+	 */
+	public boolean reserve(long bytes) {
+		if (heapBytes + bytes > threshold) {
+			return false;
+		}
+		heapBytes += bytes;
+		return true;
+	}
+
+	public MappedFile newFile(String prefix) {
+		try {
+			final MappedFile file = new MappedFile(directory, prefix, chunkBits);
+			files.add(file);
+			return file;
+		} catch (IOException e) {
+			throw new DotDiagramException("Could not create a spill file in " + directory, e);
+		}
+	}
+
+	public long spilledBytes() {
+		long bytes = 0;
+		for (MappedFile file : files) {
+			bytes += file.size();
+		}
+		return bytes;
+	}
+
+	public void close() throws IOException {
+		IOException failure = null;
+		for (MappedFile file : files) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		files.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public String toString() {
+		return "SpillStore " + directory + ": " + heapBytes + " heap bytes of " + threshold + ", " + spilledBytes()
+				+ " spilled bytes";
+	}
+}
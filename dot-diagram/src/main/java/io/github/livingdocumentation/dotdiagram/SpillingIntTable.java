@@ -0,0 +1,60 @@
+package io.github.livingdocumentation.dotdiagram;
+
+/**
+ * An IntTable keeping its first rows on the heap within the budget of a
+ * SpillStore, and the next ones in a memory-mapped file
+ */
+final class SpillingIntTable extends IntTable {
+
+	private final SpillStore store;
+
+	private MappedFile file;
+
+	private int heapRows;
+
+	private int spilled = 0;
+
+	public SpillingIntTable(int columns, SpillStore store) {
+		super(columns);
+		this.store = store;
+	}
+
+	public int size() {
+		return file == null ? super.size() : heapRows + spilled;
+	}
+
+	public int addRow() {
+		if (file == null) {
+			if (store.reserve(4L * columns)) {
+				return super.addRow();
+			}
+			heapRows = super.size();
+			file = store.newFile("rows");
+		}
+		file.allocate(4L * columns);
+		return heapRows + spilled++;
+	}
+
+	public int get(int row, int column) {
+		if (file == null || row < heapRows) {
+			return super.get(row, column);
+		}
+		return file.getInt(position(row, column));
+	}
+
+	public void set(int row, int column, int value) {
+		if (file == null || row < heapRows) {
+			super.set(row, column, value);
+		} else {
+			file.putInt(position(row, column), value);
+		}
+	}
+
+	private long position(int row, int column) {
+		return 4L * ((long) (row - heapRows) * columns + column);
+	}
+
+	public String toString() {
+		return "SpillingIntTable: " + size() + " rows of " + columns + " columns, " + spilled + " spilled";
+	}
+}
@@ -0,0 +1,111 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+
+/**
+ * A StringPool keeping its strings on the heap within the budget of a
+ * SpillStore, and appending the next ones to a memory-mapped file, as a length
+ * followed by the chars; spilled strings have indices below -1, and are
+ * deduplicated through an index of their hash codes, chaining the strings of
+ * a same hash
+ */
+final class SpillingStringPool extends StringPool {
+
+	// estimate of the heap bytes of a String and of its pool entries
+	private static final int STRING_OVERHEAD = 64;
+
+	private final SpillStore store;
+
+	private MappedFile file;
+
+	private long[] positions = new long[16];
+
+	private final LongIntHashMap firstByHash = new LongIntHashMap();
+
+	private int[] nextSameHash = new int[16];
+
+	private int spilled = 0;
+
+	public SpillingStringPool(SpillStore store) {
+		this.store = store;
+	}
+
+	public int size() {
+		return super.size() + spilled;
+	}
+
+	public int intern(String s) {
+		if (s == null) {
+			return -1;
+		}
+		final int existing = indexOf(s);
+		if (existing != -1) {
+			return existing;
+		}
+		if (file == null && store.reserve(STRING_OVERHEAD + 2L * s.length())) {
+			return super.intern(s);
+		}
+		return spill(s);
+	}
+
+	private int spill(String s) {
+		final int first = firstByHash.getOrPut(s.hashCode(), spilled);
+		if (first != spilled) {
+			int last = first;
+			for (int i = first; i != -1; i = nextSameHash[i]) {
+				if (spilledEquals(i, s)) {
+					return -2 - i;
+				}
+				last = i;
+			}
+			nextSameHash[last] = spilled;
+		}
+		if (file == null) {
+			file = store.newFile("strings");
+		}
+		final int length = s.length();
+		final long position = file.allocate(4 + 2L * length);
+		file.putInt(position, length);
+		for (int i = 0; i < length; i++) {
+			file.putChar(position + 4 + 2L * i, s.charAt(i));
+		}
+		if (spilled == positions.length) {
+			positions = Arrays.copyOf(positions, spilled + (spilled >> 1));
+			nextSameHash = Arrays.copyOf(nextSameHash, positions.length);
+		}
+		positions[spilled] = position;
+		nextSameHash[spilled] = -1;
+		return -2 - spilled++;
+	}
+
+	private boolean spilledEquals(int spilledIndex, String s) {
+		final long position = positions[spilledIndex];
+		final int length = file.getInt(position);
+		if (length != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (file.getChar(position + 4 + 2L * i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String get(int index) {
+		if (index >= -1) {
+			return super.get(index);
+		}
+		final long position = positions[-2 - index];
+		final int length = file.getInt(position);
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = file.getChar(position + 4 + 2L * i);
+		}
+		return new String(chars);
+	}
+
+	public String toString() {
+		return "SpillingStringPool: " + super.size() + " strings on heap, " + spilled + " spilled";
+	}
+}
@@ -0,0 +1,50 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings into int indices, so that columns of a graph only hold ints
+ * and every distinct label or option string is only stored once; -1 stands for
+ * null
+ */
+class StringPool {
+
+	private final ObjectIntHashMap indices = new ObjectIntHashMap();
+
+	private String[] strings = new String[16];
+
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	public int intern(String s) {
+		if (s == null) {
+			return -1;
+		}
+		final int index = indices.getOrPut(s, size);
+		if (index == size) {
+			if (size == strings.length) {
+				strings = Arrays.copyOf(strings, size + (size >> 1));
+			}
+			strings[size++] = s;
+		}
+		return index;
+	}
+
+	/**
+	 * @return The index of the given string if already interned, or -1
+	 */
+	protected int indexOf(String s) {
+		return indices.get(s);
+	}
+
+	public String get(int index) {
+		return index == -1 ? null : strings[index];
+	}
+
+	public String toString() {
+		return "StringPool: " + size + " strings";
+	}
+}
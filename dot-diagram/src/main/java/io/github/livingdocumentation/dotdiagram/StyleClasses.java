@@ -0,0 +1,128 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.AbstractNode;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Node;
+
+/**
+ * The style classes rendering of the nodes and associations of a digraph or
+ * cluster: the elements without options are rendered in order, then each
+ * distinct options string is rendered once, as the default of an anonymous
+ * subgraph of all the elements using it, in the order of their first use.
+ * 
+ * As the node defaults of a subgraph only apply to the nodes it creates, a
+ * node already referenced by an edge rendered earlier, such as an edge of a
+ * cluster to a node of the digraph, keeps its options on its own line within
+ * its group.
+ */
+final class StyleClasses {
+
+	private StyleClasses() {
+	}
+
+	public static void renderNodes(Appendable out, AbstractNode[] nodes, int size, RenderOptions options)
+			throws IOException {
+		final Map<String, List<AbstractNode>> classes = new LinkedHashMap<String, List<AbstractNode>>();
+		for (int i = 0; i < size; i++) {
+			final AbstractNode node = nodes[i];
+			// clusters have no node options, and unlabeled nodes render nothing
+			if (node instanceof Node && node.getOptions() != null && node.getLabel() != null) {
+				members(classes, node.getOptions()).add(node);
+			} else {
+				node.render(out, options);
+			}
+		}
+		for (Map.Entry<String, List<AbstractNode>> styleClass : classes.entrySet()) {
+			DotRenderer.openStyleClass(out, "node", styleClass.getKey(), options.isCompact());
+			final List<AbstractNode> members = styleClass.getValue();
+			final AbstractNode[] ordered = members.toArray(new AbstractNode[members.size()]);
+			if (ParallelRendering.isWorthIt(ordered, ordered.length, options)) {
+				ParallelRendering.render(out, ordered, ordered.length, options);
+			} else {
+				for (AbstractNode node : ordered) {
+					node.render(out, options);
+				}
+			}
+			DotRenderer.closeStyleClass(out, options.isCompact());
+		}
+	}
+
+	public static void renderAssociations(Appendable out, List<Association> associations, boolean compact)
+			throws IOException {
+		final Map<String, List<Association>> classes = new LinkedHashMap<String, List<Association>>();
+		for (Association association : associations) {
+			final String style = association.getOptions();
+			if (style == null) {
+				association.render(out, compact, true);
+			} else {
+				members(classes, style).add(association);
+			}
+		}
+		for (Map.Entry<String, List<Association>> styleClass : classes.entrySet()) {
+			DotRenderer.openStyleClass(out, "edge", styleClass.getKey(), compact);
+			for (Association association : styleClass.getValue()) {
+				association.render(out, compact, false);
+			}
+			DotRenderer.closeStyleClass(out, compact);
+		}
+	}
+
+	/**
+	 * @return The ordinals of the styled nodes that are referenced by an edge
+	 *         before their group in the rendering of the given digraph, in a
+	 *         walk following the order of the rendering
+	 */
+	public static BitSet forwardReferenced(AbstractNode digraph) {
+		final BitSet forwardReferenced = new BitSet();
+		walk(digraph, new BitSet(), forwardReferenced);
+		return forwardReferenced;
+	}
+
+	private static void walk(AbstractNode scope, BitSet referenced, BitSet forwardReferenced) {
+		final AbstractNode[] nodes = scope.orderedNodes();
+		final int size = scope.childCount();
+		final List<AbstractNode> grouped = new ArrayList<AbstractNode>();
+		final List<Association> associations = new ArrayList<Association>();
+		for (int i = 0; i < size; i++) {
+			final AbstractNode node = nodes[i];
+			if (node instanceof Cluster) {
+				walk(node, referenced, forwardReferenced);
+			} else if (node.getLabel() != null) {
+				if (node.getOptions() != null) {
+					grouped.add(node);
+				} else {
+					referenced.set(node.ordinal);
+				}
+				associations.addAll(node.orderedAssociations());
+			}
+		}
+		for (AbstractNode node : grouped) {
+			if (referenced.get(node.ordinal)) {
+				forwardReferenced.set(node.ordinal);
+			}
+			referenced.set(node.ordinal);
+		}
+		associations.addAll(scope.orderedAssociations());
+		for (Association association : associations) {
+			referenced.set(association.source);
+			referenced.set(association.target);
+		}
+	}
+
+	private static <T> List<T> members(Map<String, List<T>> classes, String style) {
+		List<T> members = classes.get(style);
+		if (members == null) {
+			members = new ArrayList<T>();
+			classes.put(style, members);
+		}
+		return members;
+	}
+}
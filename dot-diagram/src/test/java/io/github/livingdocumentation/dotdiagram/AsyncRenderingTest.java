@@ -0,0 +1,102 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Uses sh in place of dot, the dot files being shell scripts
+ */
+public class AsyncRenderingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private GraphvizDotWriter writer;
+
+	@Before
+	public void setUp() {
+		writer = new GraphvizDotWriter(folder.getRoot().getPath() + File.separator, "", ".png", "sh {1}.dot");
+	}
+
+	@Test
+	public void renders_many_chatty_processes_in_flight() throws Exception {
+		final List<CompletableFuture<String>> images = new ArrayList<CompletableFuture<String>>();
+		for (int i = 0; i < 20; i++) {
+			// more output than a pipe buffer, that nobody reads
+			images.add(writer.toImageAsync("d" + i, "head -c 200000 /dev/zero; echo done >&2", 0, TimeUnit.SECONDS));
+		}
+		for (int i = 0; i < 20; i++) {
+			assertEquals("d" + i + ".png", images.get(i).get(30, TimeUnit.SECONDS));
+		}
+		writer.toImage("sync", "head -c 200000 /dev/zero");
+	}
+
+	@Test
+	public void reports_the_errors_of_the_process() throws Exception {
+		try {
+			writer.toImageAsync("fails", "echo 'syntax error in line 1'; exit 1", 0, TimeUnit.SECONDS).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("syntax error in line 1"));
+		}
+	}
+
+	@Test
+	public void destroys_the_process_on_timeout_and_cancel() throws Exception {
+		final File timedOutPid = new File(folder.getRoot(), "timed-out.pid");
+		try {
+			writer.toImageAsync("runaway", runaway(timedOutPid), 100, TimeUnit.MILLISECONDS).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("timed out"));
+		}
+		assertDies(pidOf(timedOutPid));
+
+		final File cancelledPid = new File(folder.getRoot(), "cancelled.pid");
+		final CompletableFuture<String> cancelled = writer.toImageAsync("cancelled", runaway(cancelledPid), 0,
+				TimeUnit.SECONDS);
+		final String pid = pidOf(cancelledPid);
+		cancelled.cancel(true);
+		assertDies(pid);
+	}
+
+	/**
+	 * @return A script writing its pid into the given file, then sleeping
+	 *         far longer than the test, under the same pid
+	 */
+	private static String runaway(File pidFile) {
+		return "echo $$ > " + pidFile.getPath() + "; exec sleep 60";
+	}
+
+	private static String pidOf(File pidFile) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!pidFile.exists() || pidFile.length() == 0) {
+			assertTrue("No pid written into " + pidFile, System.nanoTime() - deadline < 0);
+			Thread.sleep(10);
+		}
+		return new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+	}
+
+	private static void assertDies(String pid) throws Exception {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (new ProcessBuilder("kill", "-0", pid).redirectErrorStream(true).start().waitFor() == 0) {
+			assertTrue("Process " + pid + " still alive", System.nanoTime() - deadline < 0);
+			Thread.sleep(10);
+		}
+	}
+}
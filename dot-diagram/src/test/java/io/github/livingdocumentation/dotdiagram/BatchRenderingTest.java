@@ -0,0 +1,145 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchRenderingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void renders_heaviest_first_and_reports_errors() throws Exception {
+		final RecordingWriter writer = new RecordingWriter(folder.getRoot(), 0);
+		final List<DiagramJob> jobs = Arrays.asList(DiagramJob.of("small", "digraph G {}"),
+				DiagramJob.of("fails", "digraph G { a -> b }"), DiagramJob.of("large", "digraph G { a -> b -> c }"));
+
+		final List<Future<String>> images = writer.renderAll(jobs, 1, Long.MAX_VALUE);
+
+		assertEquals("small.png", images.get(0).get());
+		assertEquals("large.png", images.get(2).get());
+		try {
+			images.get(1).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("fails", e.getCause().getMessage());
+		}
+		assertEquals(Arrays.asList("large", "fails", "small"), writer.rendered);
+		assertTrue(new File(folder.getRoot(), "small.dot").exists());
+	}
+
+	@Test
+	public void bounded_by_parallelism_and_weight() throws Exception {
+		final List<DiagramJob> jobs = new ArrayList<DiagramJob>();
+		for (int i = 0; i < 12; i++) {
+			jobs.add(DiagramJob.of("d" + i, "digraph G {}", 10));
+		}
+		final RecordingWriter byParallelism = new RecordingWriter(folder.getRoot(), 20);
+		waitFor(byParallelism.renderAll(jobs, 3, Long.MAX_VALUE));
+		assertTrue(byParallelism.maxRunning.get() <= 3);
+
+		final RecordingWriter byWeight = new RecordingWriter(folder.getRoot(), 20);
+		waitFor(byWeight.renderAll(jobs, 6, 25));
+		assertTrue(byWeight.maxRunning.get() <= 2);
+		assertEquals(12, byWeight.rendered.size());
+	}
+
+	@Test
+	public void single_dot_process_per_batch() throws Exception {
+		// fake dot -O, logging its runs and stopping at the first broken file like dot does
+		final File dot = new File(folder.getRoot(), "dot");
+		Files.write(dot.toPath(), ("#!/bin/sh\n" + "echo run >> \"$(dirname \"$0\")/runs\"\n" + "shift 2\n"
+				+ "for f in \"$@\"; do\n"
+				+ "  if grep -q broken \"$f\"; then echo \"Error: $f: syntax error in line 1\"; exit 1; fi\n"
+				+ "  cp \"$f\" \"$f.svg\"\n" + "done\n").getBytes(StandardCharsets.US_ASCII));
+		assertTrue(dot.setExecutable(true));
+		final String path = folder.getRoot().getPath() + File.separator;
+		final GraphvizDotWriter writer = new GraphvizDotWriter(path, path, ".svg", null);
+
+		final List<DiagramJob> jobs = new ArrayList<DiagramJob>();
+		for (int i = 0; i < 5; i++) {
+			jobs.add(DiagramJob.of("d" + i, i == 1 ? "digraph G { broken" : "digraph G {}"));
+		}
+		final List<Future<String>> images = writer.toImages(jobs, 4);
+
+		assertEquals("d0.svg", images.get(0).get());
+		try {
+			images.get(1).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("d1.dot: syntax error"));
+		}
+		for (int i = 2; i < 5; i++) {
+			assertEquals("d" + i + ".svg", images.get(i).get());
+			assertTrue(new File(path + "d" + i + ".svg").exists());
+		}
+		// one run for the first batch, one for its rest after the broken file, one for the second batch
+		assertEquals(3, Files.readAllLines(new File(path + "runs").toPath()).size());
+	}
+
+	private static void waitFor(List<Future<String>> futures) throws Exception {
+		for (Future<String> future : futures) {
+			future.get();
+		}
+	}
+
+	/**
+	 * Records the renderings instead of running Graphviz
+	 */
+	private static final class RecordingWriter extends AbstractDotWriter {
+
+		private final File directory;
+
+		private final long millis;
+
+		private final List<String> rendered = Collections.synchronizedList(new ArrayList<String>());
+
+		private final AtomicInteger running = new AtomicInteger();
+
+		private final AtomicInteger maxRunning = new AtomicInteger();
+
+		RecordingWriter(File directory, long millis) {
+			this.directory = directory;
+			this.millis = millis;
+		}
+
+		public String getPath() {
+			return directory.getPath() + File.separator;
+		}
+
+		public String getImageExtension() {
+			return ".png";
+		}
+
+		public void render(String filename) throws InterruptedException, IOException {
+			final int now = running.incrementAndGet();
+			maxRunning.accumulateAndGet(now, Math::max);
+			try {
+				rendered.add(filename);
+				Thread.sleep(millis);
+				if (filename.equals("fails")) {
+					throw new DotDiagramException(filename);
+				}
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CachingDotWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void renders_only_the_changed_diagrams() throws Exception {
+		final CopyingWriter writer = new CopyingWriter(folder.newFolder("out"), ".svg");
+		final File cache = folder.newFolder("cache");
+		final CachingDotWriter caching = new CachingDotWriter(writer, cache, 1 << 20);
+
+		assertEquals("a.svg", caching.toImage("a", "digraph G { a }"));
+		assertEquals("b.svg", caching.toImage("b", "digraph G { a }"));
+		assertEquals("a.svg", caching.toImage("a", "digraph G { a -> b }"));
+		assertEquals(2, writer.renders);
+		assertEquals(1, caching.getHits());
+		assertEquals(2, caching.getMisses());
+		assertEquals("digraph G { a }", read(new File(writer.directory, "b.svg")).trim());
+
+		// another build sharing the cache, in another format
+		final CachingDotWriter png = new CachingDotWriter(new CopyingWriter(writer.directory, ".png"), cache, 1 << 20);
+		png.toImage("a", "digraph G { a }");
+		assertEquals(1, png.getMisses());
+		caching.toImage("c", "digraph G { a -> b }");
+		assertEquals(2, caching.getHits());
+	}
+
+	@Test
+	public void evicts_the_least_recently_used_images() throws Exception {
+		final CopyingWriter writer = new CopyingWriter(folder.newFolder("out"), ".svg");
+		final File cache = folder.newFolder("cache");
+		final String content = "digraph G { a -> b }";
+		final long maxBytes = 2 * content.length() + 8;
+		final CachingDotWriter caching = new CachingDotWriter(writer, cache, maxBytes);
+
+		caching.toImage("a", content + " ");
+		caching.toImage("b", content + "  ");
+		// b used before a
+		for (File image : cache.listFiles()) {
+			image.setLastModified(image.length() == content.length() + 2 ? 2000 : 1000);
+		}
+		caching.toImage("c", content + "   ");
+		assertTrue(caching.getCachedBytes() <= maxBytes);
+		assertEquals(2, cache.list().length);
+
+		caching.toImage("a", content + " ");
+		assertEquals(1, caching.getHits());
+		caching.toImage("b", content + "  ");
+		assertEquals(1, caching.getHits());
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), "ISO-8859-1");
+	}
+
+	/**
+	 * Renders an image as a copy of its dot file
+	 */
+	private static final class CopyingWriter extends AbstractDotWriter {
+
+		private final File directory;
+
+		private final String imageExtension;
+
+		private int renders;
+
+		CopyingWriter(File directory, String imageExtension) {
+			this.directory = directory;
+			this.imageExtension = imageExtension;
+		}
+
+		public String getPath() {
+			return directory.getPath() + File.separator;
+		}
+
+		public String getImageExtension() {
+			return imageExtension;
+		}
+
+		public void render(String filename) throws IOException {
+			renders++;
+			Files.copy(new File(getPath() + filename + ".dot").toPath(),
+					new File(getPath() + filename + imageExtension).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
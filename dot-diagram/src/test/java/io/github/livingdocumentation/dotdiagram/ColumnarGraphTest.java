@@ -0,0 +1,176 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static io.github.livingdocumentation.dotdiagram.DotGraphTest.readTestResource;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.ASSOCIATION_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.INSTANTIATION_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.NOTE_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.NOTE_NODE_OPTIONS;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.STUB_NODE_OPTIONS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Node;
+
+public class ColumnarGraphTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void test_cluster() {
+		final String testName = "clustering";
+		final DotGraph graph = DotGraph.columnar(testName + " test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Cluster cluster = digraph.addCluster("Brand");
+		cluster.setLabel("BMW brand").setComment("my cluster");
+		cluster.addNode("Car").setLabel("My Car").setComment("This is BMW").setOptions(STUB_NODE_OPTIONS);
+		cluster.addNode("Wheel").setLabel("Its wheels").setComment("The wheels of my car");
+		cluster.addAssociation("Car", "Wheel").setLabel("4*").setComment("There are 4 wheels")
+				.setOptions(ASSOCIATION_EDGE_STYLE);
+
+		digraph.addNode("Customer").setLabel("My Customer").setComment("He loves BMW").setOptions(NOTE_EDGE_STYLE);
+		digraph.addAssociation("Customer", "Car").setLabel("buys").setComment("The buyer of the car")
+				.setOptions(INSTANTIATION_EDGE_STYLE);
+
+		final String expected = readTestResource(testName + ".dot").trim();
+		assertEquals(expected, graph.render().trim());
+	}
+
+	@Test
+	public void same_output_as_dot_graph() {
+		final DotGraph graph = new DotGraph("columns test", "LR");
+		final DotGraph columnar = DotGraph.columnar("columns test", "LR");
+		populate(graph);
+		populate(columnar);
+
+		assertEquals(graph.render(), columnar.render());
+		assertEquals(graph.render(RenderOptions.compact()), columnar.render(RenderOptions.compact()));
+		assertEquals(graph.render(RenderOptions.styleClasses()), columnar.render(RenderOptions.styleClasses()));
+		assertEquals(graph.render(RenderOptions.styleClasses().withCompact(true).withParallel(true)), columnar
+				.render(RenderOptions.styleClasses().withCompact(true).withParallel(true)));
+		assertEquals(graph.getDigraph().findCluster("Module3").render(), columnar.getDigraph().findCluster(
+				"Module3").render());
+		assertEquals(GraphStatistics.of(graph).toString(), GraphStatistics.of(columnar).toString());
+		assertEquals(graph.getDigraph().findCluster("Module3").weight(), columnar.getDigraph().findCluster("Module3")
+				.weight());
+		columnar.getDigraph().findCluster("Module3").addAssociation("Inner node 3", "Inner node 2");
+		assertEquals(graph.getDigraph().findCluster("Module3").weight() + 1, columnar.getDigraph().findCluster(
+				"Module3").weight());
+	}
+
+	@Test
+	public void same_queries_as_dot_graph() {
+		final DotGraph graph = new DotGraph("queries test");
+		final DotGraph columnar = DotGraph.columnar("queries test");
+		populate(graph);
+		populate(columnar);
+
+		for (long key = 0; key < 600; key += 7) {
+			final Digraph digraph = graph.getDigraph();
+			final Digraph columns = columnar.getDigraph();
+			assertEquals(digraph.outDegree(key), columns.outDegree(key));
+			assertEquals(digraph.inDegree(key), columns.inDegree(key));
+			assertEquals(digraph.associationsFrom(key).toString(), columns.associationsFrom(key).toString());
+			assertEquals(digraph.associationsTo(key).toString(), columns.associationsTo(key).toString());
+			assertEquals(digraph.hasAssociation(key, key + 1), columns.hasAssociation(key, key + 1));
+			assertEquals(String.valueOf(digraph.findAssociation(key, key + 1, "next")), String.valueOf(columns
+					.findAssociation(key, key + 1, "next")));
+		}
+		columnar.getDigraph().addAssociation(7L, 8L).setLabel("after the index");
+		assertEquals("after the index", columnar.getDigraph().findAssociation(7L, 8L, "after the index")
+				.getLabel());
+	}
+
+	private static void populate(DotGraph graph) {
+		final Digraph digraph = graph.getDigraph();
+		for (int c = 5; c >= 0; c--) {
+			final Cluster cluster = digraph.addCluster("Module" + c);
+			cluster.setLabel("Module " + c).addStereotype("module");
+			final Cluster inner = cluster.addCluster("Inner" + c);
+			inner.addNode("Inner node " + c).setLabel("Inner " + c).setOptions(NOTE_NODE_OPTIONS);
+			for (long n = 20; n >= 0; n--) {
+				final long key = c * 100 + n;
+				cluster.addNodeById(key).setLabel("A rather long class name " + key).addStereotype("entity")
+						.addStereotype("aggregate").addStereotype("entity").setOptions(n % 3 == 0 ? STUB_NODE_OPTIONS
+								: null);
+				cluster.addNodeById(key).addAssociationById(key, key + 1).setLabel("next");
+				digraph.addAssociationById(key, (key * 7) % 600).setOptions(ASSOCIATION_EDGE_STYLE);
+			}
+		}
+	}
+
+	@Test
+	public void views_read_and_write_the_columns() {
+		final DotGraph graph = DotGraph.columnar("views test");
+		final Digraph digraph = graph.getDigraph();
+		final Cluster brand = digraph.addCluster("Brand");
+		final Node car = brand.addNode("Car");
+		car.setLabel("My Car").setComment("This is BMW").addStereotype("entity").addStereotype("root");
+		digraph.addNode("Car");
+		brand.addAssociation("Car", "Wheel").setLabel("4*");
+		brand.addAssociation("Car", "Wheel").setLabel("0.1").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addAssociation("Customer", "Car");
+
+		final Node again = brand.addNode("Car");
+		assertEquals(car, again);
+		assertEquals("My Car", again.getLabel());
+		assertEquals("This is BMW", again.getComment());
+		assertEquals(Arrays.asList(DotRenderer.stereotype("entity"), DotRenderer.stereotype("root")),
+				new ArrayList<String>(again.getStereotypes()));
+		assertEquals(brand, digraph.parentOf("Car"));
+		assertEquals(digraph, brand.getParent());
+		assertEquals("c1", digraph.findNode("Car").getId());
+		assertEquals("My Car", digraph.findNode("Car").getLabel());
+		assertNull(digraph.findNode("Wheel"));
+		assertEquals(1, digraph.getAssociations().size());
+		assertEquals(2, brand.getAssociations().size());
+
+		assertEquals(2, digraph.outDegree("Car"));
+		assertEquals(1, digraph.inDegree("Car"));
+		assertEquals(2, digraph.associationsTo("Wheel").size());
+		assertEquals(0, digraph.associationsFrom("Wheel").size());
+		final Association spare = digraph.findAssociation("Car", "Wheel", "0.1");
+		assertEquals(ASSOCIATION_EDGE_STYLE, spare.getOptions());
+		spare.setComment("Spare wheel");
+		assertEquals("Spare wheel", digraph.associationsFrom("Car").get(1).getComment());
+		assertTrue(digraph.hasAssociation("Customer", "Car"));
+		assertNull(digraph.findAssociation("Car", "Wheel", "5"));
+	}
+
+	@Test
+	public void spilling_graph_renders_the_same() throws IOException {
+		final DotGraph heap = DotGraph.columnar("spill test");
+		populateFlat(heap);
+		final File directory = folder.newFolder();
+		try (DotGraph spilling = DotGraph.spilling("spill test", null, directory, 4096)) {
+			populateFlat(spilling);
+			assertTrue(spilling.getSpilledBytes() > 0);
+			assertEquals(heap.render(), spilling.render());
+		}
+		assertEquals(0, directory.list().length);
+		assertEquals(0, heap.getSpilledBytes());
+	}
+
+	private static void populateFlat(DotGraph graph) {
+		final Digraph digraph = graph.getDigraph();
+		for (long key = 0; key < 500; key++) {
+			digraph.addNodeById(key).setLabel("Class " + key).setComment("comment " + key).setOptions(
+					key % 2 == 0 ? STUB_NODE_OPTIONS : NOTE_EDGE_STYLE);
+			digraph.addAssociationById(key, (key * 7) % 500).setLabel("uses " + key).setOptions(
+					ASSOCIATION_EDGE_STYLE);
+		}
+	}
+}
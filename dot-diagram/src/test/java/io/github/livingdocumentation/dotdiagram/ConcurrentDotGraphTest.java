@@ -0,0 +1,92 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+/**
+ * Stress test of the concurrent construction of a graph, one module per task;
+ * its scaling is measured by ConcurrentBuildBenchmark, in the benchmarks module
+ */
+public class ConcurrentDotGraphTest {
+
+	private static final int MODULES = 200;
+
+	private static final int CLASSES_PER_MODULE = 250;
+
+	@Test
+	public void concurrent_build_is_deterministic() throws Exception {
+		final int cores = Runtime.getRuntime().availableProcessors();
+		final String expected = build(1);
+		for (int threads = 2; threads <= Math.max(2, cores); threads *= 2) {
+			assertEquals(expected, build(threads));
+		}
+		assertTrue(expected.contains("subgraph cluster_c" + MODULES * CLASSES_PER_MODULE + " {"));
+	}
+
+	@Test
+	public void concurrent_ids_follow_the_keys_order() {
+		final DotGraph graph = DotGraph.concurrent("ids test");
+		final Digraph digraph = graph.getDigraph();
+		digraph.addNode("b").setLabel("B");
+		digraph.addNode("a").setLabel("A");
+		digraph.addNodeById(2L).setLabel("Two");
+		digraph.addAssociation("b", "a").setLabel("uses");
+
+		assertEquals("c0", digraph.addNode(2L).getId());
+		assertEquals("c1", digraph.addNode("a").getId());
+		assertEquals("c2", digraph.addNode("b").getId());
+		assertTrue(graph.render().contains("c2 -> c1 [label=\"uses\""));
+	}
+
+	@Test
+	public void ids_read_while_building_are_the_ranks_so_far() {
+		final DotGraph graph = DotGraph.concurrent("ranks test");
+		final Digraph digraph = graph.getDigraph();
+		final TreeSet<Long> keys = new TreeSet<Long>();
+		final Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			final long key = random.nextInt(1000000);
+			keys.add(key);
+			final String id = digraph.addNodeById(key).getId();
+			assertEquals("c" + keys.headSet(key).size(), id);
+			assertSame(digraph.findNodeById(key), digraph.findNodeByUniqueId(id));
+		}
+		graph.render();
+		assertEquals("c0", digraph.findNodeById(keys.first()).getId());
+		digraph.addNodeById(-1L);
+		assertEquals("c1", digraph.findNodeById(keys.first()).getId());
+	}
+
+	private static String build(int threads) throws Exception {
+		final DotGraph graph = DotGraph.concurrent("stress test");
+		final Digraph digraph = graph.getDigraph();
+		final ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(() -> IntStream.range(0, MODULES).parallel().forEach(module -> {
+				final Cluster cluster = digraph.addCluster("module-" + module);
+				cluster.setLabel("Module " + module);
+				for (int i = 0; i < CLASSES_PER_MODULE; i++) {
+					final long key = (long) module * CLASSES_PER_MODULE + i;
+					cluster.addNodeById(key).setLabel("Class" + key);
+					if (i > 0) {
+						cluster.addAssociationById(key, key - 1).setLabel("calls");
+					}
+					digraph.addAssociationById(key, (key * 31) % (MODULES * CLASSES_PER_MODULE));
+				}
+			})).get();
+		} finally {
+			pool.shutdown();
+		}
+		return graph.render();
+	}
+}
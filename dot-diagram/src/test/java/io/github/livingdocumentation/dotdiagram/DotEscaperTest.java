@@ -0,0 +1,44 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+
+public class DotEscaperTest {
+
+	@Test
+	public void clean_text_is_the_same_instance() {
+		final String label = "My Car\\n \\<\\<entity\\>\\>\\l\u00e9";
+		assertSame(label, DotEscaper.escapeQuoted(label));
+		assertSame(label, DotEscaper.escapeRecord(label));
+		assertSame(label, DotEscaper.escapeComment(label));
+	}
+
+	@Test
+	public void escapes_quotes_and_record_chars() {
+		assertEquals("say \\\"hi\\\"", DotEscaper.escapeQuoted("say \"hi\""));
+		assertEquals("Map<K,V>|{x}", DotEscaper.escapeQuoted("Map<K,V>|{x}"));
+		assertEquals("Map\\<K,V\\>\\|\\{x\\}", DotEscaper.escapeRecord("Map<K,V>|{x}"));
+		assertEquals("already \\\" and \\{", DotEscaper.escapeRecord("already \\\" and \\{"));
+		assertEquals("trailing \\\\", DotEscaper.escapeQuoted("trailing \\"));
+		assertEquals("two  lines", DotEscaper.escapeComment("two\r\nlines"));
+	}
+
+	@Test
+	public void graph_output_is_escaped() {
+		final DotGraph graph = new DotGraph("\"quoted\" title");
+		final Digraph digraph = graph.getDigraph();
+		digraph.addNode("List").setLabel("List<String>").setComment("multi\nline");
+		digraph.addNode("Map").setLabel("Map");
+		digraph.addAssociation("List", "Map").setLabel("\"to\"");
+		final String actual = graph.render();
+		assertTrue(actual, actual.contains("label=\"\\\"quoted\\\" title\""));
+		assertTrue(actual, actual.contains("[label=\"List\\<String\\>\"]"));
+		assertTrue(actual, actual.contains("//multi line"));
+		assertTrue(actual, actual.contains("[label=\"\\\"to\\\"\""));
+	}
+}
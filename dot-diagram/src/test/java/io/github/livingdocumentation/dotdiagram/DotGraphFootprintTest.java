@@ -0,0 +1,43 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Node;
+import io.github.livingdocumentation.dotdiagram.DotGraph.NodeList;
+
+/**
+ * Checks that leaf nodes share the empty containers until their first element
+ * is added; the heap retained per node is measured by FootprintBenchmark, in
+ * the benchmarks module
+ */
+public class DotGraphFootprintTest {
+
+	@Test
+	public void leaf_nodes_share_the_empty_containers() {
+		final DotGraph graph = new DotGraph("footprint test");
+		final Digraph digraph = graph.getDigraph();
+		final Cluster cluster = digraph.addCluster("module");
+		final Node car = cluster.addNode("Car");
+		final Node wheel = cluster.addNode("Wheel");
+		car.setLabel("Car");
+
+		assertSame(NodeList.EMPTY, car.nodes);
+		assertSame(NodeList.EMPTY, wheel.nodes);
+		assertSame(Collections.emptyList(), car.stereotypes);
+		assertSame(Collections.emptyList(), wheel.associations);
+		assertEquals(2, cluster.nodes.size());
+
+		car.addStereotype("Entity").addStereotype("Entity");
+		car.addAssociation("Car", "Wheel");
+		assertEquals(Collections.singletonList(DotRenderer.stereotype("Entity")), car.stereotypes);
+		assertEquals(1, car.associations.size());
+		assertSame(Collections.emptyList(), wheel.stereotypes);
+		assertSame(NodeList.EMPTY, car.nodes);
+	}
+}
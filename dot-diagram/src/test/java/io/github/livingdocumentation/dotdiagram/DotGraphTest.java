@@ -1,18 +1,29 @@
 package io.github.livingdocumentation.dotdiagram;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static io.github.livingdocumentation.dotdiagram.DotStyles.ASSOCIATION_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.COLLABORATION_NODE_OPTIONS;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.IMPLEMENTS_EDGE_STYLE;
 import static io.github.livingdocumentation.dotdiagram.DotStyles.INSTANTIATION_EDGE_STYLE;
 import static io.github.livingdocumentation.dotdiagram.DotStyles.NOTE_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.NOTE_NODE_OPTIONS;
 import static io.github.livingdocumentation.dotdiagram.DotStyles.STUB_NODE_OPTIONS;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
 
 import org.junit.Test;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Association;
 import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
 import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Node;
 
 public class DotGraphTest {
 
@@ -55,6 +66,80 @@ public class DotGraphTest {
 	@Test
 	public void test_cluster() {
 		final String testName = "clustering";
+		final DotGraph graph = clusteringGraph(testName);
+
+		final String actual = graph.render().trim();
+
+		// System.out.println(actual);
+		final String expected = readTestResource(testName + ".dot").trim();
+		assertEquals(expected.trim(), actual);
+	}
+
+	@Test
+	public void test_style_classes() {
+		final DotGraph graph = clusteringGraph("clustering");
+		graph.getDigraph().addNode("Dealer").setLabel("My Dealer").setOptions(NOTE_EDGE_STYLE);
+		graph.getDigraph().addAssociation("Dealer", "Car").setOptions(INSTANTIATION_EDGE_STYLE);
+
+		final String expected = readTestResource("style-classes.dot").trim();
+		assertEquals(expected, graph.render(RenderOptions.styleClasses()).trim());
+	}
+
+	@Test
+	public void test_style_classes_forward_reference() {
+		final DotGraph graph = clusteringGraph("clustering");
+		final Digraph digraph = graph.getDigraph();
+		digraph.addNode("Dealer").setLabel("My Dealer").setOptions(NOTE_EDGE_STYLE);
+		final RenderOptions cached = RenderOptions.styleClasses().withFragmentCache(true);
+		graph.render(cached);
+		// creates the dealer within the cluster, before the group of its style
+		digraph.findCluster("Brand").addAssociation("Car", "Dealer").setLabel("sold by");
+
+		final String expected = readTestResource("style-classes-forward.dot").trim();
+		assertEquals(expected, graph.render(RenderOptions.styleClasses()).trim());
+		assertEquals(expected, graph.render(cached).trim());
+	}
+
+	@Test
+	public void test_compact() {
+		final DotGraph graph = clusteringGraph("clustering");
+
+		final String expected = readTestResource("clustering-compact.dot").trim();
+		assertEquals(expected, graph.render(RenderOptions.compact()));
+		final String styled = graph.render(RenderOptions.compact().withStyleClasses(true));
+		assertTrue(styled, styled.contains("{edge[arrowhead=open];c1->c2[label=\"4*\"];}"));
+	}
+
+	@Test
+	public void test_style_classes_output_is_smaller() {
+		final DotGraph graph = new DotGraph("style classes test");
+		final Digraph digraph = graph.getDigraph();
+		for (int c = 0; c < 10; c++) {
+			final Cluster cluster = digraph.addCluster("Module" + c);
+			for (int n = 0; n < 100; n++) {
+				final long key = c * 100 + n;
+				cluster.addNode(key).setLabel("C" + key).setOptions(n % 3 == 0 ? NOTE_NODE_OPTIONS
+						: COLLABORATION_NODE_OPTIONS);
+				digraph.addAssociation(key, (key * 7) % 1000).setOptions(IMPLEMENTS_EDGE_STYLE);
+			}
+		}
+		final String inline = graph.render();
+		final String styled = graph.render(RenderOptions.styleClasses().withFragmentCache(true));
+		assertTrue(styled.length() * 2 < inline.length());
+		assertEquals(count(inline, "->"), count(styled, "->"));
+		assertEquals(count(inline, "[label="), count(styled, "[label="));
+		assertEquals(inline, graph.render(RenderOptions.fragmentCache()));
+	}
+
+	private static int count(String text, String pattern) {
+		int count = 0;
+		for (int i = text.indexOf(pattern); i != -1; i = text.indexOf(pattern, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private static DotGraph clusteringGraph(final String testName) {
 		final DotGraph graph = new DotGraph(testName + " test");
 
 		final Digraph digraph = graph.getDigraph();
@@ -68,12 +153,7 @@ public class DotGraphTest {
 		digraph.addNode("Customer").setLabel("My Customer").setComment("He loves BMW").setOptions(NOTE_EDGE_STYLE);
 		digraph.addAssociation("Customer", "Car").setLabel("buys").setComment("The buyer of the car")
 				.setOptions(INSTANTIATION_EDGE_STYLE);
-
-		final String actual = graph.render().trim();
-
-		// System.out.println(actual);
-		final String expected = readTestResource(testName + ".dot").trim();
-		assertEquals(expected.trim(), actual);
+		return graph;
 	}
 
 	@Test
@@ -105,6 +185,241 @@ public class DotGraphTest {
 		assertEquals(expected.trim(), actual);
 	}
 
+	@Test
+	public void test_render_into_appendable() throws IOException {
+		final DotGraph graph = new DotGraph("streaming test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Cluster cluster = digraph.addCluster("Brand");
+		cluster.setLabel("BMW brand");
+		cluster.addNode("Car").setLabel("My Car").setOptions(STUB_NODE_OPTIONS);
+		cluster.addNode("Wheel").setLabel("Its wheels");
+		cluster.addAssociation("Car", "Wheel").setLabel("4*").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addNode("Customer").setLabel("My Customer");
+		digraph.addAssociation("Customer", "Car").setLabel("buys");
+
+		final StringWriter out = new StringWriter();
+		graph.renderTo(out);
+
+		assertEquals(graph.render(), out.toString());
+	}
+
+	@Test
+	public void test_nodes_rendered_in_numerical_order() {
+		final DotGraph graph = new DotGraph("ordering test");
+
+		final Digraph digraph = graph.getDigraph();
+		for (int i = 0; i < 12; i++) {
+			graph.preloadNode("Node" + i);
+		}
+		for (int i = 11; i >= 0; i--) {
+			digraph.addNode("Node" + i).setLabel("Node " + i);
+		}
+
+		final String actual = graph.render();
+		for (int i = 1; i < 12; i++) {
+			assertTrue(actual.indexOf("\tc" + (i - 1) + " [") < actual.indexOf("\tc" + i + " ["));
+		}
+	}
+
+	@Test
+	public void test_long_keys() {
+		final DotGraph graph = new DotGraph("long keys test");
+
+		final Digraph digraph = graph.getDigraph();
+		digraph.addNodeById(42L).setLabel("Car");
+		digraph.addNodeById(7L).setLabel("Wheel");
+		digraph.addAssociationById(42L, 7L).setLabel("4*");
+
+		assertEquals("c0", graph.preloadNode(Long.valueOf(42L)));
+		assertEquals("c1", graph.preloadNodeById(7L));
+		assertEquals("c1", digraph.addNode(Long.valueOf(7L)).getId());
+		assertEquals("c1", digraph.addNode(7L).getId());
+		assertTrue(graph.render().contains("c0 -> c1 [label=\"4*\""));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void test_deprecated_string_id_constructors() {
+		final DotGraph graph = new DotGraph("ids test");
+		final Digraph digraph = graph.getDigraph();
+		digraph.addNode("Car");
+		digraph.addNode("Wheel");
+
+		final Association detached = new Association("c0", "c1");
+		assertEquals("c0", detached.getSourceId());
+		assertEquals("c1", detached.getTargetId());
+		assertEquals(digraph.addAssociation("Car", "Wheel"), detached);
+		try {
+			new Association("Car", "c1");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// not a unique id
+		}
+	}
+
+	@Test
+	public void test_int_keys_stay_integer_keys() {
+		final DotGraph graph = new DotGraph("int keys test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Node five = digraph.addNode(5);
+		assertSame(five, digraph.addNode(Integer.valueOf(5)));
+		assertEquals("c1", digraph.addNodeById(5).getId());
+		assertEquals("c2", digraph.addNode('5').getId());
+		assertSame(five, digraph.findNode(5));
+	}
+
+	@Test
+	public void test_parallel_rendering_is_identical() {
+		final DotGraph graph = new DotGraph("parallel test");
+
+		final Digraph digraph = graph.getDigraph();
+		for (int c = 0; c < 20; c++) {
+			final Cluster cluster = digraph.addCluster("Module" + c);
+			cluster.setLabel("Module " + c);
+			for (int n = 0; n < 50; n++) {
+				final String key = "Class" + c + "." + n;
+				cluster.addNode(key).setLabel(key).setOptions(STUB_NODE_OPTIONS);
+				cluster.addAssociation(key, "Class" + c + "." + (n + 1) % 50).setLabel("uses");
+			}
+			digraph.addNode("Top" + c).setLabel("Top " + c);
+			digraph.addAssociation("Top" + c, "Class" + c + ".0");
+		}
+
+		final String sequential = graph.render();
+		assertEquals(sequential, graph.render(RenderOptions.parallel().withParallelThreshold(10)));
+		assertEquals(sequential, graph.render(RenderOptions.parallel()));
+	}
+
+	@Test
+	public void test_fragment_cache_renders_changes() {
+		final DotGraph graph = new DotGraph("cache test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Cluster cluster = digraph.addCluster("Brand");
+		cluster.setLabel("BMW brand");
+		final Node car = cluster.addNode("Car");
+		car.setLabel("My Car");
+		cluster.addNode("Wheel").setLabel("Its wheels");
+		final Association association = cluster.addAssociation("Car", "Wheel");
+		digraph.addNode("Customer").setLabel("My Customer");
+
+		final RenderOptions cached = RenderOptions.fragmentCache();
+		assertEquals(graph.render(), graph.render(cached));
+
+		car.setLabel("My new Car").addStereotype("Entity");
+		association.setLabel("4*");
+		assertEquals(graph.render(), graph.render(cached));
+
+		cluster.addNode("Engine").setLabel("Engine");
+		digraph.addAssociation("Customer", "Car").setComment("buys");
+		assertEquals(graph.render(), graph.render(cached));
+		assertEquals(graph.render(), graph.render(cached.withParallel(true).withParallelThreshold(1)));
+	}
+
+	@Test
+	public void test_fragment_cache_cannot_be_bypassed_by_getters() {
+		final DotGraph graph = new DotGraph("cache test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Node car = digraph.addNode("Car");
+		car.setLabel("My Car").addStereotype("Entity");
+		digraph.addAssociation("Car", "Car");
+		final String rendered = graph.render(RenderOptions.fragmentCache());
+		try {
+			car.getStereotypes().add("<<Aggregate>>");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// read-only
+		}
+		try {
+			digraph.getAssociations().clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// read-only
+		}
+		car.addStereotype("Aggregate");
+		assertEquals(graph.render(), graph.render(RenderOptions.fragmentCache()));
+		assertTrue(!rendered.equals(graph.render()));
+	}
+
+	@Test
+	public void test_weight_follows_additions() {
+		final DotGraph graph = new DotGraph("weight test");
+		final Digraph digraph = graph.getDigraph();
+		final Cluster outer = digraph.addCluster("outer");
+		final Cluster inner = outer.addCluster("inner");
+		inner.addNode("a");
+		assertEquals(4, digraph.weight());
+		assertEquals(2, inner.weight());
+
+		inner.addNode("b");
+		inner.addAssociation("a", "b");
+		assertEquals(6, digraph.weight());
+		assertEquals(5, outer.weight());
+		outer.addNode("c");
+		assertEquals(7, digraph.weight());
+		assertEquals(4, inner.weight());
+	}
+
+	@Test
+	public void test_find_nodes_at_any_depth() {
+		final DotGraph graph = new DotGraph("find test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Cluster brand = digraph.addCluster("Brand");
+		final Cluster factory = brand.addCluster("Factory");
+		final Node car = factory.addNode("Car");
+		final Node customer = digraph.addNode("Customer");
+
+		assertSame(car, digraph.findNode("Car"));
+		assertSame(car, digraph.findNodeByUniqueId(car.getId()));
+		assertSame(factory, digraph.findCluster("Factory"));
+		assertSame(factory, digraph.parentOf("Car"));
+		assertSame(brand, digraph.parentOf("Factory"));
+		assertSame(digraph, digraph.parentOf("Customer"));
+		assertSame(customer, digraph.findNode("Customer"));
+		assertNull(digraph.findCluster("Car"));
+		assertNull(digraph.findNode("Boat"));
+		assertNull(digraph.findNodeByUniqueId("c42"));
+
+		// looking up does not register anything
+		assertEquals("c4", digraph.addNode("Wheel").getId());
+	}
+
+	@Test
+	public void test_parallel_associations_and_degrees() {
+		final DotGraph graph = new DotGraph("degrees test");
+
+		final Digraph digraph = graph.getDigraph();
+		final Cluster cluster = digraph.addCluster("Brand");
+		cluster.addNode("Car").setLabel("Car");
+		cluster.addNode("Wheel").setLabel("Wheel");
+		for (int i = 0; i < 1000; i++) {
+			cluster.addAssociation("Car", "Wheel");
+		}
+		cluster.addAssociation("Car", "Wheel").setLabel("spare");
+		digraph.addAssociation("Customer", "Car");
+
+		assertEquals(1001, digraph.outDegree("Car"));
+		assertEquals(1001, digraph.inDegree("Wheel"));
+		assertEquals(1, digraph.inDegree("Car"));
+		assertEquals(0, digraph.outDegree("Boat"));
+		assertEquals("spare", digraph.associationsFrom("Car").get(1000).getLabel());
+		assertEquals("c3", digraph.associationsTo("Car").get(0).getSourceId());
+		assertTrue(digraph.hasAssociation("Customer", "Car"));
+		assertNull(digraph.findAssociation("Car", "Customer", null));
+		assertNotNull(digraph.findAssociation("Car", "Wheel", null));
+		assertSame(digraph.associationsFrom("Car").get(1000), digraph.findAssociation("Car", "Wheel", "spare"));
+		assertSame(digraph.associationsFrom("Car").get(0), digraph.findAssociation("Car", "Wheel", null));
+		assertNull(digraph.findAssociation("Car", "Wheel", "front"));
+		assertTrue(!digraph.hasAssociation("Wheel", "Car"));
+
+		cluster.addAssociation("Car", "Wheel").setLabel("front");
+		assertSame(digraph.associationsFrom("Car").get(1001), digraph.findAssociation("Car", "Wheel", "front"));
+	}
+
 	/**
 	 * @return A String that represents the content of the file
 	 */
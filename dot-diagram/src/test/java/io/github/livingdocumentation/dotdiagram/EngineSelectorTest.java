@@ -0,0 +1,91 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.EngineSelector.Engine;
+
+public class EngineSelectorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void statistics_of_a_graph() {
+		final DotGraph graph = new DotGraph("statistics");
+		final Digraph digraph = graph.getDigraph();
+		final Cluster outer = digraph.addCluster("outer");
+		outer.addNode("a");
+		outer.addCluster("inner").addNode("b");
+		digraph.addNode("c");
+		digraph.addAssociation("a", "b");
+		digraph.addAssociation("b", "c");
+
+		final GraphStatistics statistics = GraphStatistics.of(graph);
+		assertEquals(3, statistics.getNodeCount());
+		assertEquals(2, statistics.getEdgeCount());
+		assertEquals(2, statistics.getClusterCount());
+		assertEquals(2, statistics.getClusterDepth());
+	}
+
+	@Test
+	public void selects_the_engine_by_size() {
+		final EngineSelector engines = EngineSelector.defaults();
+		assertEquals(EngineSelector.DOT, engines.select(new GraphStatistics(2000, 5000, 3, 1)));
+		assertEquals(EngineSelector.FDP, engines.select(new GraphStatistics(5000, 20000, 3, 1)));
+		assertEquals(EngineSelector.SFDP, engines.select(new GraphStatistics(5000, 20000, 0, 0)));
+		assertEquals(EngineSelector.SFDP, engines.select(new GraphStatistics(20000, 20000, 3, 1)));
+
+		final Engine neato = Engine.of("neato", "-Goverlap=false");
+		assertEquals(neato, engines.when(10, 10, neato).select(new GraphStatistics(1, 0, 0, 0)));
+		assertEquals("neato -Goverlap=false", neato.toCommand());
+	}
+
+	@Test
+	public void falls_back_to_a_faster_engine_over_the_time_budget() throws Exception {
+		// fake engines writing their name into the image, the last argument
+		final File dot = engine("dot", "");
+		engine("sfdp", "");
+		final String path = folder.getRoot().getPath() + File.separator;
+		final GraphvizDotWriter writer = new GraphvizDotWriter(path, path, ".png", "{0}dot -Tpng {1}.dot -o {1}.png");
+		final DotGraph graph = new DotGraph("fallback");
+		graph.getDigraph().addNode("a");
+
+		final EngineSelector engines = EngineSelector.of(EngineSelector.DOT);
+		assertEquals(EngineSelector.SFDP, writer.toImage("big", graph, engines.when(1, 0, EngineSelector.SFDP)));
+		assertEquals("sfdp", image(path + "big.png"));
+
+		assertEquals(EngineSelector.DOT, writer.toImage("small", graph, engines));
+		assertEquals("dot", image(path + "small.png"));
+
+		Files.write(dot.toPath(), script("sleep 5").getBytes(StandardCharsets.US_ASCII));
+		assertEquals(EngineSelector.SFDP,
+				writer.toImage("slow", graph, engines.withFallback(200, TimeUnit.MILLISECONDS, EngineSelector.SFDP)));
+		assertEquals("sfdp", image(path + "slow.png"));
+	}
+
+	private File engine(String name, String before) throws Exception {
+		final File engine = new File(folder.getRoot(), name);
+		Files.write(engine.toPath(), script(before).getBytes(StandardCharsets.US_ASCII));
+		engine.setExecutable(true);
+		return engine;
+	}
+
+	private static String script(String before) {
+		return "#!/bin/sh\n" + before + "\nfor last; do :; done\nbasename \"$0\" > \"$last\"\n";
+	}
+
+	private static String image(String filename) throws Exception {
+		return new String(Files.readAllBytes(new File(filename).toPath()), StandardCharsets.US_ASCII).trim();
+	}
+}
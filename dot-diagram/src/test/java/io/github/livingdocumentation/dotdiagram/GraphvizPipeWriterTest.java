@@ -0,0 +1,74 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Uses cat in place of dot, as a process echoing its standard input
+ */
+public class GraphvizPipeWriterTest {
+
+	private final GraphvizPipeWriter cat = new GraphvizPipeWriter(Arrays.asList("cat"));
+
+	@Test
+	public void pipes_the_content_through_the_process() throws Exception {
+		final DotGraph graph = new DotGraph("pipe test");
+		for (int i = 0; i < 20000; i++) {
+			graph.getDigraph().addNode(i).setLabel("Node " + i + " \u00e9");
+		}
+		final String expected = graph.render();
+		assertEquals(expected, new String(cat.toImage(graph), StandardCharsets.UTF_8));
+		assertEquals(expected, new String(cat.toImage(expected), StandardCharsets.UTF_8));
+
+		final ByteArrayOutputStream image = new ByteArrayOutputStream();
+		cat.toImage(new ByteArrayInputStream(expected.getBytes(StandardCharsets.UTF_8)), image);
+		assertEquals(expected, new String(image.toByteArray(), StandardCharsets.UTF_8));
+
+		final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		try (InputStream stream = cat.toImageStream(graph)) {
+			GraphvizPipeWriter.copy(stream, streamed);
+		}
+		assertEquals(expected, new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void stream_reports_the_errors_of_the_process_on_close() throws Exception {
+		final GraphvizPipeWriter failing = new GraphvizPipeWriter(Arrays.asList("sh", "-c",
+				"cat; echo 'syntax error in line 1' >&2; exit 1"));
+		final InputStream stream = failing.toImageStream(new DotGraph("failing"));
+		assertEquals('#', stream.read());
+		try {
+			stream.close();
+			fail();
+		} catch (DotDiagramException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("syntax error in line 1"));
+		}
+	}
+
+	@Test
+	public void reports_the_errors_of_the_process() throws Exception {
+		final GraphvizPipeWriter failing = new GraphvizPipeWriter(Arrays.asList("sh", "-c",
+				"cat > /dev/null; echo 'syntax error in line 1' >&2; exit 1"));
+		try {
+			failing.toImage("digraph G {");
+			fail();
+		} catch (DotDiagramException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("syntax error in line 1"));
+		}
+	}
+
+	@Test
+	public void dot_command_line() {
+		assertEquals(Arrays.asList("/usr/bin/dot", "-Tsvg", "-Gdpi=72"), new GraphvizPipeWriter("/usr/bin/",
+				"svg", "-Gdpi=72").getCommand());
+	}
+}
@@ -0,0 +1,77 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.livingdocumentation.dotdiagram.HistogramMetrics.Histogram;
+
+public class HistogramMetricsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void percentiles_within_a_factor_2() {
+		final Histogram histogram = new HistogramMetrics().getRenderNanos();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(63, histogram.getPercentile(50));
+		assertEquals(100, histogram.getPercentile(99));
+		assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void measures_every_stage() throws Exception {
+		final HistogramMetrics metrics = new HistogramMetrics();
+		final DotGraph graph = new DotGraph("metrics");
+		graph.getDigraph().addNode("a");
+		graph.getDigraph().addNode("b");
+		graph.getDigraph().addAssociation("a", "b");
+		graph.render(RenderOptions.defaults().withMetricsListener(metrics));
+		assertEquals(1, metrics.getRenderNanos().getCount());
+		assertEquals(2, metrics.getNodes().getMax());
+		assertEquals(1, metrics.getEdges().getMax());
+
+		// a fake dot failing on the file named fails.dot, and writing a dummy image otherwise
+		final File dot = folder.newFile("dot");
+		Files.write(dot.toPath(), ("#!/bin/sh\n" + "case \"$2\" in *fails.dot) echo 'syntax error' >&2; exit 1;; esac\n"
+				+ "echo image > \"$4\"\n").getBytes(StandardCharsets.US_ASCII));
+		assertTrue(dot.setExecutable(true));
+		final DotGraph failing = new DotGraph("fails");
+		failing.getDigraph().addNode("a");
+		failing.getDigraph().addAssociation("a", "b");
+		final String path = folder.getRoot().getPath() + File.separator;
+		final GraphvizDotWriter writer = new GraphvizDotWriter(path, path, ".png", "{0}dot -Tpng {1}.dot -o {1}.png");
+		writer.setMetricsListener(metrics);
+		try {
+			writer.toImage("fails", failing);
+			fail();
+		} catch (DotDiagramException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("syntax error"));
+		}
+		writer.toImage("ok", "digraph G {}");
+		assertTrue(new File(folder.getRoot(), "ok.png").exists());
+
+		final Map<String, Long> map = metrics.toMap();
+		assertEquals(2, (long) map.get("render.nanos.count"));
+		assertEquals(2, (long) map.get("write.bytes.count"));
+		assertEquals(new File(folder.getRoot(), "fails.dot").length(), (long) map.get("write.bytes.max"));
+		assertEquals(2, (long) map.get("graphviz.nanos.count"));
+		assertEquals(1, (long) map.get("graphviz.failures"));
+		assertTrue(map.get("graphviz.nanos.max") >= map.get("spawn.nanos.max"));
+	}
+}
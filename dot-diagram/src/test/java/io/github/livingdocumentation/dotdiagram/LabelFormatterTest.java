@@ -0,0 +1,122 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import org.junit.Test;
+
+public class LabelFormatterTest {
+
+	@Test
+	public void same_output_as_tokenizing() {
+		final Random random = new Random(42);
+		final String alphabet = "ab \t\nCDe";
+		for (int n = 0; n < 2000; n++) {
+			final StringBuilder sb = new StringBuilder();
+			final int length = random.nextInt(80);
+			for (int i = 0; i < length; i++) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			final String text = sb.toString();
+			final int width = random.nextInt(25);
+			assertEquals(text, tokenizingWrap(text, width), DotRenderer.wrapText(text, width));
+		}
+	}
+
+	@Test
+	public void joins_stereotypes_then_wraps() {
+		final List<String> stereotypes = Arrays.asList("<<entity>>", "<<aggregate root>>");
+		final String label = "A rather long class name";
+		final String expected = tokenizingWrap(DotRenderer.toLines(Arrays.asList(label, stereotypes.get(0),
+				stereotypes.get(1))), 20);
+		assertEquals(expected, new LabelFormatter(10).format(label, stereotypes, 20));
+	}
+
+	@Test
+	public void cache_counts_hits_and_misses_and_evicts() {
+		final LabelFormatter formatter = new LabelFormatter(2);
+		final List<String> stereotypes = Collections.singletonList("entity");
+		formatter.format("Car", stereotypes, 20);
+		formatter.format("Car", stereotypes, 20);
+		formatter.format("Car", stereotypes, 10);
+		formatter.format("Car", Collections.<String> emptyList(), 20);
+		formatter.format("Car", stereotypes, 20);
+		assertEquals(1, formatter.getHits());
+		assertEquals(4, formatter.getMisses());
+		assertEquals(2, formatter.getSize());
+	}
+
+	@Test
+	public void striped_cache_keeps_its_bound() {
+		final LabelFormatter formatter = new LabelFormatter(LabelFormatter.DEFAULT_CACHE_SIZE);
+		for (int i = 0; i < 3 * LabelFormatter.DEFAULT_CACHE_SIZE; i++) {
+			formatter.format("Class" + i, 20);
+		}
+		assertTrue(formatter.getSize() > LabelFormatter.DEFAULT_CACHE_SIZE / 2);
+		assertTrue(formatter.getSize() <= LabelFormatter.DEFAULT_CACHE_SIZE);
+		formatter.clear();
+		assertEquals(0, formatter.getSize());
+	}
+
+	@Test
+	public void graphs_share_the_formatter_unless_given_their_own() {
+		final DotGraph cars = new DotGraph("cars");
+		cars.getDigraph().addNode("Car").setLabel("Shared label test");
+		final DotGraph trucks = new DotGraph("trucks");
+		trucks.getDigraph().addNode("Truck").setLabel("Shared label test");
+		assertSame(LabelFormatter.shared(), cars.getLabelFormatter());
+
+		final long hits = LabelFormatter.shared().getHits();
+		cars.render();
+		trucks.render();
+		assertTrue(LabelFormatter.shared().getHits() > hits);
+	}
+
+	@Test
+	public void each_graph_counts_its_own_labels() {
+		final DotGraph cars = new DotGraph("cars");
+		cars.getDigraph().addNode("Car").setLabel("Car");
+		cars.getDigraph().addNode("Wheel").setLabel("Wheel");
+		cars.setLabelFormatter(new LabelFormatter(100));
+		final DotGraph bikes = new DotGraph("bikes");
+		bikes.getDigraph().addNode("Bike").setLabel("Bike");
+		bikes.setLabelFormatter(new LabelFormatter(100));
+
+		cars.render();
+		cars.render();
+		bikes.render();
+		assertEquals(2, cars.getLabelFormatter().getMisses());
+		assertEquals(2, cars.getLabelFormatter().getHits());
+		assertEquals(1, bikes.getLabelFormatter().getMisses());
+		assertEquals(0, bikes.getLabelFormatter().getHits());
+
+		final LabelFormatter given = new LabelFormatter(10);
+		bikes.render(RenderOptions.defaults().withLabelFormatter(given));
+		assertEquals(1, given.getMisses());
+		assertEquals(1, bikes.getLabelFormatter().getMisses());
+	}
+
+	// the former DotRenderer.wrapText
+	private static String tokenizingWrap(String text, int length) {
+		final StringBuffer sb = new StringBuffer();
+		StringTokenizer st = new StringTokenizer(text, " \t\n", true);
+		int lineLength = 0;
+		while (st.hasMoreElements()) {
+			String token = st.nextToken();
+			if (lineLength > length) {
+				lineLength = 0;
+				sb.append("\\l");
+			}
+			sb.append(token);
+			lineLength += token.length();
+		}
+		return sb.toString();
+	}
+}
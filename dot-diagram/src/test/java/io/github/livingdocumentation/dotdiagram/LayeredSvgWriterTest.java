@@ -0,0 +1,157 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static io.github.livingdocumentation.dotdiagram.DotStyles.ASSOCIATION_EDGE_STYLE;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.CLASS_NODE_OPTIONS;
+import static io.github.livingdocumentation.dotdiagram.DotStyles.EXTENDS_EDGE_STYLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import io.github.livingdocumentation.dotdiagram.DotGraph.Cluster;
+import io.github.livingdocumentation.dotdiagram.DotGraph.Digraph;
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Box;
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Edge;
+import io.github.livingdocumentation.dotdiagram.LayeredLayout.Vertex;
+
+public class LayeredSvgWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void renders_a_class_diagram_into_svg() throws Exception {
+		final LayeredSvgWriter writer = new LayeredSvgWriter(folder.getRoot().getPath() + File.separator);
+		assertEquals("classes.svg", writer.toImage("classes", classDiagram(null)));
+
+		final byte[] svg = java.nio.file.Files.readAllBytes(new File(folder.getRoot(), "classes.svg").toPath());
+		final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new ByteArrayInputStream(svg));
+		assertEquals("svg", document.getDocumentElement().getTagName());
+		final String text = new String(svg, StandardCharsets.UTF_8);
+		assertEquals(7, count(text, "<g class=\"node\">"));
+		assertEquals(9, count(text, "<g class=\"edge\">"));
+		assertEquals(2, count(text, "<g class=\"cluster\">"));
+		assertTrue(text, text.contains("&lt;&lt;Entity&gt;&gt;"));
+		assertTrue(text, text.contains("url(#empty)"));
+		assertFalse(new File(folder.getRoot(), "classes.dot").exists());
+
+		try {
+			writer.toImage("text", "digraph G { a -> b }");
+			fail();
+		} catch (DotDiagramException e) {
+			// no dot parser
+		}
+		assertFalse(new File(folder.getRoot(), "text.dot").exists());
+	}
+
+	@Test
+	public void layered_without_overlaps() {
+		for (String direction : new String[] { null, "LR" }) {
+			final LayeredLayout layout = new LayeredLayout(classDiagram(direction));
+			final List<Vertex> vertices = layout.vertices;
+			for (Vertex v1 : vertices) {
+				for (Vertex v2 : vertices) {
+					if (v1 != v2 && !v1.dummy && !v2.dummy) {
+						assertFalse(v1 + " overlaps " + v2, Math.abs(v1.x - v2.x) < (v1.w + v2.w) / 2
+								&& Math.abs(v1.y - v2.y) < (v1.h + v2.h) / 2);
+					}
+				}
+				if (!v1.dummy) {
+					for (Box box = v1.cluster; box != null; box = box.parent) {
+						assertTrue(v1 + " out of " + box, box.x0 < v1.x - v1.w / 2 && v1.x + v1.w / 2 < box.x1
+								&& box.y0 < v1.y - v1.h / 2 && v1.y + v1.h / 2 < box.y1);
+					}
+				}
+			}
+			for (Edge edge : layout.edges) {
+				if (!edge.isLoop()) {
+					final boolean forward = direction == null ? edge.upper().y < edge.lower().y : edge.upper().x < edge
+							.lower().x;
+					assertTrue(edge.toString(), forward);
+				}
+			}
+			assertTrue(layout.width > 0 && layout.height > 0);
+		}
+	}
+
+	@Test
+	public void removes_the_crossings_of_a_twisted_bipartite_graph() {
+		final DotGraph graph = new DotGraph("twisted");
+		final Digraph digraph = graph.getDigraph();
+		for (String id : new String[] { "a", "b", "c", "x", "y", "z" }) {
+			digraph.addNode(id).setLabel(id);
+		}
+		digraph.addAssociation("a", "z");
+		digraph.addAssociation("b", "y");
+		digraph.addAssociation("c", "x");
+		final LayeredLayout layout = new LayeredLayout(graph);
+		for (Edge edge : layout.edges) {
+			for (Edge other : layout.edges) {
+				assertFalse(edge + " crosses " + other, edge.source.x < other.source.x
+						&& edge.target.x > other.target.x);
+			}
+		}
+	}
+
+	@Test
+	public void lays_out_long_chains() {
+		final DotGraph graph = new DotGraph("chain");
+		final Digraph digraph = graph.getDigraph();
+		for (int i = 0; i < 3000; i++) {
+			digraph.addNode(i).setLabel("Node " + i);
+			if (i > 0) {
+				digraph.addAssociation(i - 1, i);
+			}
+		}
+		digraph.addAssociation(2999, 0);
+		final String svg = new LayeredSvgWriter("").toSvg(graph);
+		assertEquals(3000, count(svg, "<g class=\"node\">"));
+	}
+
+	private static DotGraph classDiagram(String direction) {
+		final DotGraph graph = new DotGraph("Orders & Customers", direction);
+		final Digraph digraph = graph.getDigraph();
+		final Cluster domain = digraph.addCluster("domain");
+		domain.setLabel("Domain");
+		domain.addNode("Order").setLabel("Order").addStereotype("Entity").setOptions(CLASS_NODE_OPTIONS);
+		domain.addNode("OrderLine").setLabel("OrderLine").setOptions(CLASS_NODE_OPTIONS);
+		final Cluster shared = domain.addCluster("shared");
+		shared.setLabel("Shared kernel");
+		shared.addNode("Money").setLabel("Money").setOptions(CLASS_NODE_OPTIONS);
+		digraph.addNode("Customer").setLabel("Customer with a rather long name").setOptions(CLASS_NODE_OPTIONS);
+		digraph.addNode("Entity").setLabel("Entity").setOptions(CLASS_NODE_OPTIONS);
+		digraph.addNode("Repository").setLabel("Repository").setOptions("shape=ellipse");
+		digraph.addAssociation("Customer", "Order").setLabel("places").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addAssociation("Order", "OrderLine").setLabel("1..*").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addAssociation("OrderLine", "Money").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addAssociation("Order", "Money").setOptions(ASSOCIATION_EDGE_STYLE);
+		digraph.addAssociation("Entity", "Order").setOptions(EXTENDS_EDGE_STYLE);
+		digraph.addAssociation("Entity", "Customer").setOptions(EXTENDS_EDGE_STYLE);
+		digraph.addAssociation("Repository", "Repository").setLabel("self");
+		// a cycle
+		digraph.addAssociation("Money", "Customer");
+		digraph.addAssociation("Repository", "Unknown");
+		return graph;
+	}
+
+	private static int count(String text, String token) {
+		int count = 0;
+		for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + 1)) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,191 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Against an in-process stand-in server, answering the gunzipped dot content
+ * prefixed by the path as the image
+ */
+public class RemoteDotWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private String endpoint;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger failures = new AtomicInteger();
+
+	private volatile int failureCode = 503;
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/graphviz/", this::handle);
+		executor = Executors.newFixedThreadPool(8);
+		server.setExecutor(executor);
+		server.start();
+		endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/graphviz/{0}";
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		try {
+			final byte[] dot = read(new GZIPInputStream(exchange.getRequestBody()));
+			final boolean gzipped = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+			final byte[] response;
+			final int code;
+			if (!gzipped || !"POST".equals(exchange.getRequestMethod())) {
+				code = 400;
+				response = "gzipped POST expected".getBytes(StandardCharsets.UTF_8);
+			} else if (failures.getAndDecrement() > 0) {
+				code = failureCode;
+				response = "try later".getBytes(StandardCharsets.UTF_8);
+			} else {
+				Thread.sleep(20);
+				code = 200;
+				response = (exchange.getRequestURI().getPath() + " " + new String(dot, StandardCharsets.UTF_8))
+						.getBytes(StandardCharsets.UTF_8);
+			}
+			exchange.sendResponseHeaders(code, response.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(response);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			running.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	@Test
+	public void posts_gzipped_dot_over_kept_alive_connections() throws Exception {
+		final RemoteDotWriter writer = new RemoteDotWriter(folder.getRoot().getPath() + File.separator, endpoint,
+				".svg");
+		final DotGraph graph = new DotGraph("remote");
+		graph.getDigraph().addNode("a").setLabel("A");
+		final String compact = graph.render(RenderOptions.compact());
+
+		assertEquals("remote.svg", writer.toImage("remote", graph));
+		assertEquals("/graphviz/svg " + compact, new String(Files.readAllBytes(new File(folder.getRoot(),
+				"remote.svg").toPath()), StandardCharsets.UTF_8));
+		assertEquals(compact, new String(Files.readAllBytes(new File(folder.getRoot(), "remote.dot").toPath()),
+				StandardCharsets.ISO_8859_1).trim());
+		final AtomicInteger renders = new AtomicInteger();
+		writer.toImage("once", (Renderable) () -> {
+			renders.incrementAndGet();
+			return compact;
+		});
+		assertEquals(1, renders.get());
+		assertEquals("text.svg", writer.toImage("text", "digraph G { a }"));
+		assertTrue(new String(Files.readAllBytes(new File(folder.getRoot(), "text.svg").toPath()),
+				StandardCharsets.UTF_8).contains("digraph G { a }"));
+		for (int i = 0; i < 5; i++) {
+			writer.toImage(graph);
+		}
+		assertEquals(8, requests.get());
+		assertEquals(1, clientPorts.size());
+	}
+
+	@Test
+	public void bounds_the_concurrent_requests() throws Exception {
+		final RemoteDotWriter writer = new RemoteDotWriter("", endpoint, ".png", 2, 0, 0);
+		final ExecutorService clients = Executors.newFixedThreadPool(6);
+		try {
+			final List<Future<byte[]>> images = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < 12; i++) {
+				final DotGraph graph = new DotGraph("graph " + i);
+				images.add(clients.submit(() -> writer.toImage(graph)));
+			}
+			for (Future<byte[]> image : images) {
+				assertTrue(new String(image.get(), StandardCharsets.UTF_8).startsWith("/graphviz/png "));
+			}
+		} finally {
+			clients.shutdown();
+		}
+		assertTrue(String.valueOf(maxRunning.get()), maxRunning.get() <= 2);
+	}
+
+	@Test
+	public void retries_with_backoff() throws Exception {
+		final RemoteDotWriter writer = new RemoteDotWriter("", endpoint, ".svg", 1, 3, 1);
+		failures.set(3);
+		writer.toImage(new DotGraph("retried"));
+		assertEquals(4, requests.get());
+
+		failures.set(4);
+		try {
+			writer.toImage(new DotGraph("too many failures"));
+			fail();
+		} catch (DotDiagramException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("HTTP 503 try later"));
+		}
+
+		failureCode = 400;
+		failures.set(1);
+		requests.set(0);
+		try {
+			writer.toImage(new DotGraph("not retried"));
+			fail();
+		} catch (DotDiagramException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("HTTP 400"));
+		}
+		assertEquals(1, requests.get());
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GraphvizPipeWriter.copy(in, bytes);
+		return bytes.toByteArray();
+	}
+}
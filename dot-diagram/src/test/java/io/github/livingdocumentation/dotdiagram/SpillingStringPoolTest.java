@@ -0,0 +1,76 @@
+package io.github.livingdocumentation.dotdiagram;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * With 4 KB chunks instead of 64 MB, so that the spilled strings cross many
+ * chunk boundaries
+ */
+public class SpillingStringPoolTest {
+
+	private static final int CHUNK_BITS = 12;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void odd_length_strings_cross_chunk_boundaries() throws IOException {
+		final SpillStore store = new SpillStore(folder.getRoot(), 0, CHUNK_BITS);
+		try {
+			final SpillingStringPool pool = new SpillingStringPool(store);
+			final int[] indices = new int[3000];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = pool.intern(label(i));
+			}
+			assertTrue(store.spilledBytes() > 10 << CHUNK_BITS);
+			assertEquals(0, store.spilledBytes() % 4);
+			for (int i = 0; i < indices.length; i++) {
+				assertEquals(label(i), pool.get(indices[i]));
+			}
+		} finally {
+			store.close();
+		}
+	}
+
+	private static String label(int i) {
+		final StringBuilder sb = new StringBuilder("Class").append(i);
+		for (int j = 0; j < i % 7; j++) {
+			sb.append('x');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void spilled_strings_are_deduplicated() throws IOException {
+		final SpillStore store = new SpillStore(folder.getRoot(), 0, CHUNK_BITS);
+		try {
+			final SpillingStringPool pool = new SpillingStringPool(store);
+			final int label = pool.intern("My label");
+			final int options = pool.intern("color=grey");
+			final long spilledBytes = store.spilledBytes();
+
+			assertEquals(label, pool.intern(new String("My label")));
+			assertEquals(options, pool.intern("color=grey"));
+			assertEquals(2, pool.size());
+			assertEquals(spilledBytes, store.spilledBytes());
+
+			// distinct strings of the same hash code
+			final int aa = pool.intern("Aa");
+			final int bb = pool.intern("BB");
+			assertTrue(aa != bb);
+			assertEquals(aa, pool.intern("Aa"));
+			assertEquals(bb, pool.intern("BB"));
+			assertEquals("BB", pool.get(bb));
+			assertEquals(4, pool.size());
+		} finally {
+			store.close();
+		}
+	}
+}